@@ -0,0 +1,12 @@
+package com.elenasuslova.peopledb.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks the Long field holding the value of the entity's VERSION column, used for optimistic locking on update
+ */
+@Retention (RetentionPolicy.RUNTIME)
+public @interface Version {
+
+}
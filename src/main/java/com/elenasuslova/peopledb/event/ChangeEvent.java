@@ -0,0 +1,11 @@
+package com.elenasuslova.peopledb.event;
+
+import com.elenasuslova.peopledb.model.CrudOperation;
+
+import java.util.Set;
+
+/**
+ * @param changedColumns the columns written by the operation's SQL, empty for deletes
+ */
+public record ChangeEvent(Class<?> entityType, Long id, CrudOperation operationType, Set<String> changedColumns) {
+}
@@ -0,0 +1,276 @@
+package com.elenasuslova.peopledb.event;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers {@link ChangeEvent}s from repositories to any number of subscribers once their transaction has committed.
+ * <p>
+ * Repositories must use a connection returned by {@link #wrap(Connection)}: events recorded inside a transaction are
+ * held by that connection until commit() publishes them, and are dropped on rollback().
+ * <p>
+ * Published events go into a lock-free ring buffer. Producers claim a sequence number and mark the slot as published;
+ * every subscriber reads the buffer from its own cursor on its own thread and parks while it has caught up, until
+ * the next publish wakes it. A producer that would overwrite events the slowest subscriber has not read yet waits for
+ * it, backing off from MIN_BACKOFF_NANOS to MAX_BACKOFF_NANOS. Without subscribers nothing is recorded at all.
+ */
+public class ChangeFeed {
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final long MIN_BACKOFF_NANOS = 1_000;
+    public static final long MAX_BACKOFF_NANOS = 1_000_000;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<ChangeEvent> slots;
+    private final AtomicLongArray publishedSequences;
+    private final AtomicLong claimedSequence = new AtomicLong();
+    private final AtomicLong publishedSequence = new AtomicLong();
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean hasSubscribers;
+
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity size of the ring buffer, must be a power of two
+     */
+    public ChangeFeed(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedSequences.set(i, -1);
+        }
+    }
+
+    public ChangeSubscription subscribe(String name, ChangeListener listener) {
+        return subscribe(name, listener, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public synchronized ChangeSubscription subscribe(String name, ChangeListener listener, int maxBatchSize) {
+        ChangeSubscription subscription = new ChangeSubscription(this, name, listener, maxBatchSize, claimedSequence.get());
+        subscriptions.add(subscription);
+        hasSubscribers = true;
+        subscription.start();
+        return subscription;
+    }
+
+    synchronized void unsubscribe(ChangeSubscription subscription) {
+        subscriptions.remove(subscription);
+        hasSubscribers = !subscriptions.isEmpty();
+    }
+
+    public boolean hasSubscribers() {
+        return hasSubscribers;
+    }
+
+    public List<ChangeSubscription> getSubscriptions() {
+        return List.copyOf(subscriptions);
+    }
+
+    /**
+     * @return a connection whose commit() publishes the events recorded through it
+     */
+    public Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new TransactionTracker(connection));
+    }
+
+    public boolean isTracking(Connection connection) {
+        return getTracker(connection) != null;
+    }
+
+    /**
+     * Runs listener after every commit() and rollback() of connection, including the implicit commit of
+     * setAutoCommit(true).
+     */
+    public void onTransactionEnd(Connection connection, Runnable listener) {
+        TransactionTracker tracker = getTracker(connection);
+        if (tracker == null) {
+            throw new IllegalArgumentException("Connection was not created by ChangeFeed.wrap()");
+        }
+        tracker.transactionEndListeners.add(listener);
+    }
+
+    /**
+     * Publishes the event now if the connection is in auto-commit mode, otherwise when its transaction commits.
+     */
+    public void record(Connection connection, ChangeEvent event) throws SQLException {
+        if (!hasSubscribers) return;
+        TransactionTracker tracker = getTracker(connection);
+        if (tracker == null) {
+            throw new IllegalArgumentException("Connection was not created by ChangeFeed.wrap()");
+        }
+        if (connection.getAutoCommit()) {
+            publish(List.of(event));
+        } else {
+            tracker.add(event);
+        }
+    }
+
+    private TransactionTracker getTracker(Connection connection) {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof TransactionTracker tracker
+                && tracker.feed() == this) {
+            return tracker;
+        }
+        return null;
+    }
+
+    void publish(List<ChangeEvent> events) {
+        if (!hasSubscribers) return;
+        for (ChangeEvent event : events) {
+            long sequence = claimedSequence.getAndIncrement();
+            long backoffNanos = MIN_BACKOFF_NANOS;
+            while (sequence - getSlowestCursor(sequence) >= capacity) {
+                LockSupport.parkNanos(backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+            }
+            int slot = (int) (sequence & mask);
+            slots.set(slot, event);
+            publishedSequences.set(slot, sequence);
+            publishedSequence.accumulateAndGet(sequence + 1, Math::max);
+            for (ChangeSubscription subscription : subscriptions) {
+                subscription.wakeUp();
+            }
+        }
+    }
+
+    /**
+     * @return the event at sequence if it has been published, null otherwise
+     */
+    ChangeEvent read(long sequence) {
+        int slot = (int) (sequence & mask);
+        if (publishedSequences.get(slot) != sequence) return null;
+        return slots.get(slot);
+    }
+
+    long getPublishedSequence() {
+        return publishedSequence.get();
+    }
+
+    private long getSlowestCursor(long defaultCursor) {
+        long slowest = defaultCursor;
+        for (ChangeSubscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.getCursor());
+        }
+        return slowest;
+    }
+
+    private class TransactionTracker implements InvocationHandler {
+        private final Connection connection;
+        private final List<ChangeEvent> pending = new ArrayList<>();
+        private final Map<Savepoint, Integer> savepoints = new HashMap<>();
+        private final List<Runnable> transactionEndListeners = new CopyOnWriteArrayList<>();
+
+        TransactionTracker(Connection connection) {
+            this.connection = connection;
+        }
+
+        ChangeFeed feed() {
+            return ChangeFeed.this;
+        }
+
+        synchronized void add(ChangeEvent event) {
+            pending.add(event);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            int argCount = args == null ? 0 : args.length;
+            switch (method.getName()) {
+                case "commit" -> {
+                    connection.commit();
+                    flush();
+                    endTransaction();
+                    return null;
+                }
+                case "rollback" -> {
+                    if (argCount == 0) {
+                        connection.rollback();
+                        discard(0);
+                    } else {
+                        connection.rollback((Savepoint) args[0]);
+                        discard(savepoints.getOrDefault((Savepoint) args[0], 0));
+                    }
+                    endTransaction();
+                    return null;
+                }
+                case "setSavepoint" -> {
+                    Savepoint savepoint = argCount == 0 ? connection.setSavepoint() : connection.setSavepoint((String) args[0]);
+                    synchronized (this) {
+                        savepoints.put(savepoint, pending.size());
+                    }
+                    return savepoint;
+                }
+                case "setAutoCommit" -> {
+                    boolean wasAutoCommit = connection.getAutoCommit();
+                    connection.setAutoCommit((Boolean) args[0]);
+                    if (!wasAutoCommit && (Boolean) args[0]) {
+                        flush();
+                        endTransaction();
+                    }
+                    return null;
+                }
+                case "close" -> {
+                    discard(0);
+                    connection.close();
+                    return null;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+
+        private void flush() {
+            List<ChangeEvent> committed;
+            synchronized (this) {
+                committed = new ArrayList<>(pending);
+                pending.clear();
+                savepoints.clear();
+            }
+            publish(committed);
+        }
+
+        private void endTransaction() {
+            transactionEndListeners.forEach(Runnable::run);
+        }
+
+        private synchronized void discard(int fromIndex) {
+            if (fromIndex < pending.size()) {
+                pending.subList(fromIndex, pending.size()).clear();
+            }
+            if (fromIndex == 0) {
+                savepoints.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.elenasuslova.peopledb.event;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface ChangeListener {
+    /**
+     * Called on the subscription's own thread with committed events in commit order.
+     */
+    void onChanges(List<ChangeEvent> events);
+}
@@ -0,0 +1,104 @@
+package com.elenasuslova.peopledb.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One subscriber of a {@link ChangeFeed}, reading the ring buffer on its own daemon thread.
+ */
+public class ChangeSubscription implements AutoCloseable {
+    private final ChangeFeed feed;
+    private final ChangeListener listener;
+    private final int maxBatchSize;
+    private final AtomicLong cursor;
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private final AtomicLong deliveredBatches = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean parked;
+
+    ChangeSubscription(ChangeFeed feed, String name, ChangeListener listener, int maxBatchSize, long startSequence) {
+        this.feed = feed;
+        this.listener = listener;
+        this.maxBatchSize = maxBatchSize;
+        this.cursor = new AtomicLong(startSequence);
+        this.thread = new Thread(this::run, "change-feed-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    private void run() {
+        List<ChangeEvent> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            long next = cursor.get();
+            ChangeEvent event;
+            while (batch.size() < maxBatchSize && (event = feed.read(next)) != null) {
+                batch.add(event);
+                next++;
+            }
+            if (batch.isEmpty()) {
+                awaitEvent(next);
+                continue;
+            }
+            try {
+                listener.onChanges(List.copyOf(batch));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            deliveredEvents.addAndGet(batch.size());
+            deliveredBatches.incrementAndGet();
+            cursor.set(next);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Parks until the event at sequence is published or the subscription is closed. The flag is set before the
+     * event is checked again, and {@link ChangeFeed#publish(List)} sets the event before it checks the flag,
+     * so one of the two always sees the other.
+     */
+    private void awaitEvent(long sequence) {
+        parked = true;
+        if (running && feed.read(sequence) == null) {
+            LockSupport.park(this);
+        }
+        parked = false;
+    }
+
+    void wakeUp() {
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * @return the number of published events this subscriber has not processed yet
+     */
+    public long getLag() {
+        return Math.max(0, feed.getPublishedSequence() - cursor.get());
+    }
+
+    public long getDeliveredEvents() {
+        return deliveredEvents.get();
+    }
+
+    public long getDeliveredBatches() {
+        return deliveredBatches.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        feed.unsubscribe(this);
+        LockSupport.unpark(thread);
+    }
+}
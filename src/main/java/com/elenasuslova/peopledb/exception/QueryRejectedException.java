@@ -0,0 +1,7 @@
+package com.elenasuslova.peopledb.exception;
+
+public class QueryRejectedException extends RuntimeException {
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
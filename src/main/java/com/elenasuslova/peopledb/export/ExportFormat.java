@@ -0,0 +1,17 @@
+package com.elenasuslova.peopledb.export;
+
+public enum ExportFormat {
+    CSV(".csv"),
+    JSON_LINES(".jsonl"),
+    BINARY(".bin");
+
+    private final String fileExtension;
+
+    ExportFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String fileExtension() {
+        return fileExtension;
+    }
+}
@@ -0,0 +1,249 @@
+package com.elenasuslova.peopledb.export;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streams the PEOPLE table to files without building Person objects.
+ * Rows are read through a forward-only cursor and their columns written straight into a direct buffer
+ * that is reused by every export on the same thread.
+ * <p>
+ * CSV files follow the layout of the HR data set read by PeopleRepositoryTests.loadData, so they can be
+ * imported again: first name, last name, e-mail, date of birth, time of birth and salary are in columns 2, 4, 6, 10, 11
+ * and 25. Like that format, values are not quoted.
+ * <p>
+ * Binary files start with {@link #BINARY_MAGIC} and then hold one record per person, each prefixed with its length in bytes:
+ * ID (long), first name, last name, e-mail (int length + UTF-8, -1 for null), DOB as epoch seconds UTC and nanoseconds
+ * (long + int, {@link Long#MIN_VALUE} and 0 for null) and salary (short scale + short length + unscaled two's-complement bytes,
+ * length -1 for null).
+ */
+public class PeopleExporter {
+    public static final String EXPORT_SQL = """
+            SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL
+            FROM PEOPLE
+            WHERE ID BETWEEN ? AND ?
+            ORDER BY ID
+            """;
+    public static final String ID_BOUNDS_SQL = "SELECT MIN(ID), MAX(ID) FROM PEOPLE";
+    public static final String CSV_HEADER = "Emp ID,Name Prefix,First Name,Middle Initial,Last Name,Gender,E Mail,Father's Name," +
+            "Mother's Name,Mother's Maiden Name,Date of Birth,Time of Birth,Age in Yrs.,Weight in Kgs.,Date of Joining," +
+            "Quarter of Joining,Half of Joining,Year of Joining,Month of Joining,Month Name of Joining,Short Month," +
+            "Day of Joining,DOW of Joining,Short DOW,Age in Company (Years),Salary\n";
+    public static final int BINARY_MAGIC = 0x50444232;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FETCH_SIZE = 1000;
+    private static final DateTimeFormatter CSV_DATE_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy");
+    private static final DateTimeFormatter CSV_TIME_FORMAT = DateTimeFormatter.ofPattern("hh:mm:ss a", Locale.US);
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final DataSource dataSource;
+
+    public PeopleExporter(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the number of exported people
+     */
+    public long export(Path file, ExportFormat format) {
+        try (Connection connection = dataSource.getConnection()) {
+            return exportRange(connection, file, format, Long.MIN_VALUE, Long.MAX_VALUE);
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Unable to export people to " + file, e);
+        }
+    }
+
+    /**
+     * Splits [MIN(ID), MAX(ID)] into equal ranges and exports each one on its own thread and connection
+     * into directory/people-N with the format's file extension.
+     * @return the written files, in ID order
+     */
+    public List<Path> exportParallel(Path directory, ExportFormat format, int partitions) {
+        long minId;
+        long maxId;
+        try (Connection connection = dataSource.getConnection()) {
+            ResultSet rs = connection.createStatement().executeQuery(ID_BOUNDS_SQL);
+            rs.next();
+            minId = rs.getLong(1);
+            maxId = rs.getLong(2);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        long rangeSize = Math.max(1, (maxId - minId) / partitions + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Path> files = new ArrayList<>();
+            List<Future<Long>> exports = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                Path file = directory.resolve("people-" + i + format.fileExtension());
+                long from = minId + i * rangeSize;
+                long to = i == partitions - 1 ? maxId : from + rangeSize - 1;
+                files.add(file);
+                exports.add(executor.submit(() -> {
+                    try (Connection connection = dataSource.getConnection()) {
+                        return exportRange(connection, file, format, from, to);
+                    }
+                }));
+            }
+            for (Future<Long> export : exports) {
+                export.get();
+            }
+            return files;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Unable to export people to " + directory, e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long exportRange(Connection connection, Path file, ExportFormat format, long fromId, long toId) throws SQLException, IOException {
+        PreparedStatement ps = connection.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(FETCH_SIZE);
+        ps.setLong(1, fromId);
+        ps.setLong(2, toId);
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ResultSet rs = ps.executeQuery()) {
+            ChannelOutput out = new ChannelOutput(channel, BUFFERS.get());
+            switch (format) {
+                case CSV -> out.put(CSV_HEADER);
+                case BINARY -> out.putInt(BINARY_MAGIC);
+            }
+            while (rs.next()) {
+                switch (format) {
+                    case CSV -> writeCsv(rs, out);
+                    case JSON_LINES -> writeJson(rs, out);
+                    case BINARY -> writeBinary(rs, out);
+                }
+                count++;
+            }
+            out.flush();
+        }
+        return count;
+    }
+
+    private static void writeCsv(ResultSet rs, ChannelOutput out) throws SQLException, IOException {
+        LocalDateTime dob = getDob(rs);
+        BigDecimal salary = rs.getBigDecimal("SALARY");
+        out.put(Long.toString(rs.getLong("ID"))).put(",,")
+                .put(nullToEmpty(rs.getString("FIRST_NAME"))).put(",,")
+                .put(nullToEmpty(rs.getString("LAST_NAME"))).put(",,")
+                .put(nullToEmpty(rs.getString("EMAIL"))).put(",,,,")
+                .put(dob == null ? "" : CSV_DATE_FORMAT.format(dob)).put(',')
+                .put(dob == null ? "" : CSV_TIME_FORMAT.format(dob)).put(",,,,,,,,,,,,,,")
+                .put(salary == null ? "0" : salary.toPlainString()).put('\n');
+    }
+
+    private static void writeJson(ResultSet rs, ChannelOutput out) throws SQLException, IOException {
+        LocalDateTime dob = getDob(rs);
+        BigDecimal salary = rs.getBigDecimal("SALARY");
+        out.put("{\"id\":").put(Long.toString(rs.getLong("ID")));
+        out.put(",\"firstName\":");
+        writeJsonString(rs.getString("FIRST_NAME"), out);
+        out.put(",\"lastName\":");
+        writeJsonString(rs.getString("LAST_NAME"), out);
+        out.put(",\"dob\":");
+        writeJsonString(dob == null ? null : dob + "Z", out);
+        out.put(",\"salary\":").put(salary == null ? "null" : salary.toPlainString());
+        out.put(",\"email\":");
+        writeJsonString(rs.getString("EMAIL"), out);
+        out.put("}\n");
+    }
+
+    private static void writeJsonString(String value, ChannelOutput out) throws IOException {
+        if (value == null) {
+            out.put("null");
+            return;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        out.put(escaped.append('"').toString());
+    }
+
+    private static void writeBinary(ResultSet rs, ChannelOutput out) throws SQLException, IOException {
+        long id = rs.getLong("ID");
+        byte[] firstName = toBytes(rs.getString("FIRST_NAME"));
+        byte[] lastName = toBytes(rs.getString("LAST_NAME"));
+        byte[] email = toBytes(rs.getString("EMAIL"));
+        LocalDateTime dob = getDob(rs);
+        BigDecimal salary = rs.getBigDecimal("SALARY");
+        byte[] unscaledSalary = salary == null ? null : salary.unscaledValue().toByteArray();
+
+        int length = Long.BYTES + stringLength(firstName) + stringLength(lastName) + stringLength(email)
+                + Long.BYTES + Integer.BYTES + 2 * Short.BYTES + (unscaledSalary == null ? 0 : unscaledSalary.length);
+        out.putInt(length);
+        out.putLong(id);
+        writeBinaryString(firstName, out);
+        writeBinaryString(lastName, out);
+        writeBinaryString(email, out);
+        if (dob == null) {
+            out.putLong(Long.MIN_VALUE).putInt(0);
+        } else {
+            out.putLong(dob.toEpochSecond(ZoneOffset.UTC)).putInt(dob.getNano());
+        }
+        if (salary == null) {
+            out.putShort(0).putShort(-1);
+        } else {
+            out.putShort(salary.scale()).putShort(unscaledSalary.length).put(unscaledSalary);
+        }
+    }
+
+    private static void writeBinaryString(byte[] bytes, ChannelOutput out) throws IOException {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static int stringLength(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime getDob(ResultSet rs) throws SQLException {
+        Timestamp dob = rs.getTimestamp("DOB");
+        return dob == null ? null : dob.toLocalDateTime();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
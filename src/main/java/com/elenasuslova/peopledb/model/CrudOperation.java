@@ -7,5 +7,16 @@ public enum CrudOperation {
     FIND_ALL,
     DELETE_ONE,
     DELETE_MANY,
-    COUNT
+    COUNT,
+    FIND_BY_ID_RANGE,
+    COUNT_BY_ID_RANGE,
+    FIND_ID_BOUNDS,
+    FIND_ALL_BY_ID,
+    FIND_DESCENDANTS,
+    FIND_ANCESTORS,
+    FIND_RESIDENT_IDS,
+    SALARY_STATS,
+    GROUPED_SALARY_STATS,
+    SALARY_PERCENTILE,
+    GROUPED_SALARY_PERCENTILE
 }
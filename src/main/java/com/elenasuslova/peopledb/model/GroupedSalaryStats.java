@@ -0,0 +1,4 @@
+package com.elenasuslova.peopledb.model;
+
+public record GroupedSalaryStats(String group, SalaryStats stats) {
+}
@@ -1,6 +1,7 @@
 package com.elenasuslova.peopledb.model;
 
 import com.elenasuslova.peopledb.annotation.Id;
+import com.elenasuslova.peopledb.annotation.Version;
 
 import java.math.BigDecimal;
 import java.time.ZoneId;
@@ -13,6 +14,8 @@ import java.util.Set;
 public class Person{
     @Id
     private Long id;
+    @Version
+    private Long version = 0L;
     String firstName;
     String lastName;
     ZonedDateTime dob;
@@ -61,6 +64,12 @@ public class Person{
     public void setId(Long id) {
         this.id = id;
     }
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
     public BigDecimal getSalary() {
         return salary;
     }
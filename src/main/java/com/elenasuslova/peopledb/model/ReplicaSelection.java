@@ -0,0 +1,6 @@
+package com.elenasuslova.peopledb.model;
+
+public enum ReplicaSelection {
+    ROUND_ROBIN,
+    LEAST_LOADED
+}
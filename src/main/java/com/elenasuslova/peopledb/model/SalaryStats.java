@@ -0,0 +1,6 @@
+package com.elenasuslova.peopledb.model;
+
+import java.math.BigDecimal;
+
+public record SalaryStats(long count, BigDecimal total, BigDecimal average, BigDecimal min, BigDecimal max) {
+}
@@ -0,0 +1,7 @@
+package com.elenasuslova.peopledb.model;
+
+public enum StatsGrouping {
+    REGION,
+    STATE,
+    DOB_DECADE
+}
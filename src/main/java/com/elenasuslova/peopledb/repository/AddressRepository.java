@@ -9,13 +9,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 public class AddressRepository extends CrudRepository<Address> {
+    public static final String FIND_RESIDENT_IDS_SQL = "SELECT ID FROM PEOPLE WHERE HOME_ADDRESS IN (:ids) OR BIZ_ADDRESS IN (:ids)";
+
+    private BiConsumer<CrudOperation, Set<Long>> addressWriteListener;
 
     public AddressRepository(Connection connection) {
         super(connection);
     }
 
+    public AddressRepository(ReplicaRouter replicaRouter) {
+        super(replicaRouter);
+    }
+
     @Override
     @SQL(operationType = CrudOperation.FIND_BY_ID, value = """
             SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
@@ -53,7 +66,69 @@ public class AddressRepository extends CrudRepository<Address> {
     }
 
     @Override
+    @SQL(operationType = CrudOperation.UPDATE, value = """
+           UPDATE ADDRESSES SET STREET_ADDRESS=?, ADDRESS2=?, CITY=?, STATE=?, POSTCODE=?, COUNTY=?,
+           REGION=?, COUNTRY=? WHERE ID=?
+           """)
+    @SQL(operationType = CrudOperation.DELETE_ONE, value = "DELETE FROM ADDRESSES WHERE ID=?")
+    @SQL(operationType = CrudOperation.DELETE_MANY, value = "DELETE FROM ADDRESSES WHERE ID IN (:ids)")
     void mapForUpdate(Address entity, PreparedStatement ps) throws SQLException {
+        mapForSave(entity, ps);
+    }
+
+    /**
+     * Calls listener after an address was updated or deleted, with the IDs of the people whose HOME_ADDRESS or
+     * BIZ_ADDRESS referred to it.
+     */
+    void onAddressWrite(BiConsumer<CrudOperation, Set<Long>> listener) {
+        this.addressWriteListener = listener;
+    }
+
+    @Override
+    public void delete(Address entity) {
+        // looked up first, as ON DELETE SET NULL clears the references
+        Set<Long> residentIds = findResidentIds(entity);
+        super.delete(entity);
+        notifyAddressWrite(CrudOperation.DELETE_ONE, residentIds);
+    }
+
+    @Override
+    public void delete(Address... entities) {
+        Set<Long> residentIds = findResidentIds(entities);
+        super.delete(entities);
+        notifyAddressWrite(CrudOperation.DELETE_MANY, residentIds);
+    }
+
+    @Override
+    protected void postWrite(CrudOperation operationType, Address entity) {
+        if (operationType == CrudOperation.UPDATE) {
+            notifyAddressWrite(operationType, findResidentIds(entity));
+        }
+    }
+
+    private void notifyAddressWrite(CrudOperation operationType, Set<Long> residentIds) {
+        if (addressWriteListener != null) {
+            addressWriteListener.accept(operationType, residentIds);
+        }
+    }
 
+    private Set<Long> findResidentIds(Address... addresses) {
+        Set<Long> residentIds = new HashSet<>();
+        if (addressWriteListener == null) return residentIds;
+        String ids = Arrays.stream(addresses)
+                .map(Address::id)
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+        try {
+            Statement st = connection.createStatement();
+            String sql = FIND_RESIDENT_IDS_SQL.replace(":ids", ids);
+            ResultSet rs = execute(CrudOperation.FIND_RESIDENT_IDS, st, () -> st.executeQuery(sql));
+            while (rs.next()) {
+                residentIds.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return residentIds;
     }
 }
@@ -3,34 +3,67 @@ package com.elenasuslova.peopledb.repository;
 import com.elenasuslova.peopledb.annotation.Id;
 import com.elenasuslova.peopledb.annotation.MultiSQL;
 import com.elenasuslova.peopledb.annotation.SQL;
+import com.elenasuslova.peopledb.annotation.Version;
+import com.elenasuslova.peopledb.event.ChangeEvent;
+import com.elenasuslova.peopledb.event.ChangeFeed;
+import com.elenasuslova.peopledb.exception.OptimisticLockException;
+import com.elenasuslova.peopledb.exception.QueryRejectedException;
+import com.elenasuslova.peopledb.exception.QueryTimeoutException;
 import com.elenasuslova.peopledb.exception.UnableToSaveException;
 import com.elenasuslova.peopledb.model.CrudOperation;
 
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class CrudRepository<T> {
+    public static final int SCAN_PAGE_SIZE = 500;
+    public static final int SCAN_SPLIT_THRESHOLD = 2_000;
+    public static final String VERSION_COLUMN = "VERSION";
+    public static final String LOCK_TIMEOUT_SQL = "SELECT LOCK_TIMEOUT()";
+    public static final String SET_LOCK_TIMEOUT_SQL = "SET LOCK_TIMEOUT :millis";
+
+    private static final Pattern INSERT_COLUMNS = Pattern.compile("INSERT\\s+INTO\\s+\\w+\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UPDATE_COLUMNS = Pattern.compile("\\bSET\\b(.*?)\\bWHERE\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     protected Connection connection;
+    private ReplicaRouter replicaRouter;
+    private ChangeFeed changeFeed;
+    private final Map<CrudOperation, Set<String>> changedColumns = new EnumMap<>(CrudOperation.class);
+    private final StatementLimiter limiter = new StatementLimiter();
     public CrudRepository(Connection connection) {
         this.connection = connection;
     }
 
+    /**
+     * Writes go to the router's primary; findById, findAll and count are sent to its replicas.
+     */
+    public CrudRepository(ReplicaRouter replicaRouter) {
+        this(replicaRouter.getPrimary());
+        this.replicaRouter = replicaRouter;
+    }
+
     public T save(T entity) throws UnableToSaveException {
         try {
             PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.SAVE, this::getSaveSql), Statement.RETURN_GENERATED_KEYS);
             mapForSave(entity, ps);
-            int recordsAffected = ps.executeUpdate();
+            int recordsAffected = execute(CrudOperation.SAVE, ps, ps::executeUpdate);
             ResultSet rs = ps.getGeneratedKeys();
             while (rs.next()){
                 long id = rs.getLong(1);
                 setIdByAnnotation(id, entity);
                 postSave(entity, id);
+                afterWrite(CrudOperation.SAVE, entity);
               //  System.out.println(entity);
             }
            // System.out.printf("Records affected: %d%n", recordsAffected);
@@ -41,43 +74,114 @@ public abstract class CrudRepository<T> {
         return entity;
     }
 
+    /**
+     * Inserts all entities with a single JDBC batch and sets their generated IDs.
+     * Unlike {@link #save(Object)} this does not call {@link #postSave(Object, long)},
+     * so related entities must be saved by the caller.
+     */
+    public List<T> saveAll(List<T> entities) throws UnableToSaveException {
+        if (entities.isEmpty()) return entities;
+        try {
+            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.SAVE, this::getSaveSql), Statement.RETURN_GENERATED_KEYS);
+            for (T entity : entities) {
+                mapForSave(entity, ps);
+                ps.addBatch();
+            }
+            execute(CrudOperation.SAVE, ps, ps::executeBatch);
+            ResultSet rs = ps.getGeneratedKeys();
+            for (T entity : entities) {
+                if (!rs.next()) {
+                    throw new UnableToSaveException("No generated key returned for entity: " + entity);
+                }
+                setIdByAnnotation(rs.getLong(1), entity);
+                afterWrite(CrudOperation.SAVE, entity);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UnableToSaveException("Tried to save entities: " + entities);
+        }
+        return entities;
+    }
 
     public Optional<T> findById(Long id) {
         T entity = null;
+        Connection readConnection = acquireReadConnection();
         try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSql));
+            PreparedStatement ps = readConnection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSql));
             ps.setLong(1, id);
-            ResultSet rs = ps.executeQuery();
-            while(rs.next()) {
-                entity = extractEntityFromResultSet(rs);
-            }
+            entity = execute(CrudOperation.FIND_BY_ID, ps, () -> {
+                T found = null;
+                ResultSet rs = ps.executeQuery();
+                while(rs.next()) {
+                    found = extractEntityFromResultSet(rs);
+                }
+                return found;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseReadConnection(readConnection);
         }
         return Optional.ofNullable(entity);
     }
 
     public List<T> findAll() {
         List<T> entities = new ArrayList<>();
+        Connection readConnection = acquireReadConnection();
         try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_ALL, this::getFindAllSql),
+            PreparedStatement ps = readConnection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_ALL, this::getFindAllSql),
                     ResultSet.TYPE_SCROLL_INSENSITIVE,
                     ResultSet.CONCUR_READ_ONLY);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                entities.add(extractEntityFromResultSet(rs));
-            }
+            execute(CrudOperation.FIND_ALL, ps, () -> {
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    entities.add(extractEntityFromResultSet(rs));
+                }
+                return entities;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseReadConnection(readConnection);
+        }
+        return entities;
+    }
+
+    /**
+     * Loads the entities with the given IDs in a single query. IDs that are not found are skipped.
+     * @throws RuntimeException if the query fails, so that a missing entity always means it does not exist
+     */
+    public List<T> findAllById(Collection<Long> ids) {
+        List<T> entities = new ArrayList<>();
+        if (ids.isEmpty()) return entities;
+        Connection readConnection = acquireReadConnection();
+        try {
+            Statement st = readConnection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            String idList = ids.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","));
+            String sql = getSqlByAnnotation(CrudOperation.FIND_ALL_BY_ID, this::getFindAllByIdSql).replace(":ids", idList);
+            execute(CrudOperation.FIND_ALL_BY_ID, st, () -> {
+                ResultSet rs = st.executeQuery(sql);
+                while (rs.next()) {
+                    entities.add(extractEntityFromResultSet(rs));
+                }
+                return entities;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            releaseReadConnection(readConnection);
         }
         return entities;
     }
 
     public long count() {
         long count=0;
+        Connection readConnection = acquireReadConnection();
         try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.COUNT, this::getCountSql));
-            ResultSet rs = ps.executeQuery();
+            PreparedStatement ps = readConnection.prepareStatement(getSqlByAnnotation(CrudOperation.COUNT, this::getCountSql));
+            ResultSet rs = execute(CrudOperation.COUNT, ps, ps::executeQuery);
             if (rs.next()) {
                 count = rs.getLong(1);
             //    System.out.printf("Total Count: %s%n", count);
@@ -85,21 +189,178 @@ public abstract class CrudRepository<T> {
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseReadConnection(readConnection);
         }
         return count;
     }
 
+    /**
+     * Visits every entity in the table on a ForkJoinPool with one worker per core.
+     * @see #spliterator(DataSource)
+     */
+    public void parallelScan(DataSource dataSource, Consumer<? super T> action) {
+        parallelScan(dataSource, action, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void parallelScan(DataSource dataSource, Consumer<? super T> action, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> StreamSupport.stream(spliterator(dataSource), true).forEach(action)).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits [MIN(ID), MAX(ID)] into ID ranges that are read in pages of {@link #SCAN_PAGE_SIZE} rows,
+     * each page on a connection borrowed from dataSource, which should therefore be a pool.
+     * <p>
+     * A range is only split while it holds more than {@link #SCAN_SPLIT_THRESHOLD} rows, so dense ranges end up
+     * smaller than sparse ones. Pages are fetched only when the previous one has been consumed, so a slow consumer
+     * slows down the scan instead of rows piling up in memory.
+     */
+    public Spliterator<T> spliterator(DataSource dataSource) {
+        try (Connection scanConnection = dataSource.getConnection()) {
+            PreparedStatement ps = scanConnection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_ID_BOUNDS, this::getFindIdBoundsSql));
+            ResultSet rs = execute(CrudOperation.FIND_ID_BOUNDS, ps, ps::executeQuery);
+            rs.next();
+            long minId = rs.getLong(1);
+            if (rs.wasNull()) return Spliterators.emptySpliterator();
+            return new IdRangeSpliterator<>(this, dataSource, minId, rs.getLong(2));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void delete(T entity) {
         try {
             PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.DELETE_ONE, this::getDeleteSql));
             ps.setLong(1, getIdByAnnotation(entity));
-            int affectedRecordCount = ps.executeUpdate();
+            int affectedRecordCount = execute(CrudOperation.DELETE_ONE, ps, ps::executeUpdate);
+            afterWrite(CrudOperation.DELETE_ONE, entity);
            // System.out.println(affectedRecordCount);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Gives every statement of the operation at most timeout to finish, unless a {@link Deadline} on the calling
+     * thread ends earlier. Statements still running at their deadline are cancelled.
+     * @param timeout null to only use the caller's deadline
+     */
+    public void setDefaultTimeout(CrudOperation operationType, Duration timeout) {
+        limiter.setDefaultTimeout(operationType, timeout);
+    }
+
+    /**
+     * Lets at most maxConcurrent statements run at once. A statement that cannot start within maxQueueWait,
+     * or before its deadline, is rejected instead of adding to the load.
+     */
+    public void limitConcurrency(int maxConcurrent, Duration maxQueueWait) {
+        limitConcurrency(new Semaphore(maxConcurrent, true), maxQueueWait);
+    }
+
+    /**
+     * Like {@link #limitConcurrency(int, Duration)}, with permits that can be shared by repositories using the same database.
+     */
+    public void limitConcurrency(Semaphore permits, Duration maxQueueWait) {
+        limiter.limitConcurrency(permits, maxQueueWait);
+    }
+
+    /**
+     * @return how many statements of the operation were cancelled or failed to get a lock before their deadline
+     */
+    public long getTimeoutCount(CrudOperation operationType) {
+        return limiter.getTimeoutCount(operationType);
+    }
+
+    /**
+     * @return how many statements of the operation were rejected by the concurrency limit
+     */
+    public long getShedCount(CrudOperation operationType) {
+        return limiter.getShedCount(operationType);
+    }
+
+    @FunctionalInterface
+    protected interface StatementCall<R> {
+        R execute() throws SQLException;
+    }
+
+    /**
+     * Runs call, which executes statement, within the concurrency limit and the operation's deadline.
+     * @throws QueryRejectedException if no permit became available in time
+     * @throws QueryTimeoutException if the deadline passed before or while the statement ran
+     */
+    protected <R> R execute(CrudOperation operationType, Statement statement, StatementCall<R> call) throws SQLException {
+        return limiter.execute(operationType, statement, call);
+    }
+
+    private Connection acquireReadConnection() {
+        return replicaRouter == null ? connection : replicaRouter.acquireRead();
+    }
+
+    private void releaseReadConnection(Connection readConnection) {
+        if (replicaRouter != null) {
+            replicaRouter.release(readConnection);
+        }
+    }
+
+    private void afterWrite(CrudOperation operationType, T entity) {
+        postWrite(operationType, entity);
+        recordChange(new ChangeEvent(entity.getClass(), getIdByAnnotation(entity), operationType, getChangedColumns(operationType, entity)));
+    }
+
+    /**
+     * Reports a write on this repository's connection to the replica router and the change feed.
+     * Writes made through the CRUD methods are reported already; use this for rows changed indirectly,
+     * e.g. by a foreign key action.
+     */
+    protected void recordChange(ChangeEvent event) {
+        if (replicaRouter != null) {
+            replicaRouter.recordWrite();
+        }
+        if (changeFeed != null && changeFeed.hasSubscribers()) {
+            try {
+                changeFeed.record(connection, event);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Sends a {@link ChangeEvent} to the feed for every write once its transaction commits.
+     * The repository's connection must have been created by {@link ChangeFeed#wrap(Connection)}.
+     */
+    public void publishChangesTo(ChangeFeed changeFeed) {
+        if (!changeFeed.isTracking(connection)) {
+            throw new IllegalArgumentException("Repository connection was not created by ChangeFeed.wrap()");
+        }
+        this.changeFeed = changeFeed;
+    }
+
+    private synchronized Set<String> getChangedColumns(CrudOperation operationType, T entity) {
+        return changedColumns.computeIfAbsent(operationType, op -> switch (op) {
+            case SAVE -> parseColumns(INSERT_COLUMNS, getSqlByAnnotation(op, this::getSaveSql));
+            case UPDATE -> {
+                String sql = getSqlByAnnotation(op, this::getUpdateSql);
+                yield parseColumns(UPDATE_COLUMNS, getVersionField(entity).isPresent() ? addVersionCheck(sql) : sql);
+            }
+            default -> Set.of();
+        });
+    }
+
+    private static Set<String> parseColumns(Pattern pattern, String sql) {
+        Matcher matcher = pattern.matcher(sql);
+        if (!matcher.find()) return Set.of();
+        return Arrays.stream(matcher.group(1).split(","))
+                .map(column -> column.split("=")[0].trim())
+                .filter(column -> !column.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
     private void setIdByAnnotation(Long id, T entity){
          Arrays.stream(entity.getClass().getDeclaredFields())
                 .filter(f -> f.isAnnotationPresent(Id.class))
@@ -112,7 +373,7 @@ public abstract class CrudRepository<T> {
                     }
                 });
     }
-    private Long getIdByAnnotation(T entity){
+    Long getIdByAnnotation(T entity){
         return Arrays.stream(entity.getClass().getDeclaredFields())
                 .filter(f -> f.isAnnotationPresent(Id.class))
                 .map(f -> {
@@ -135,23 +396,157 @@ public abstract class CrudRepository<T> {
                     .map(e -> getIdByAnnotation(e))
                     .map(String::valueOf)
                     .collect(Collectors.joining(","));
-            int affectedRecords = st.executeUpdate(getSqlByAnnotation(CrudOperation.DELETE_MANY, this::getDeleteInSql).replace(":ids", ids));
+            String sql = getSqlByAnnotation(CrudOperation.DELETE_MANY, this::getDeleteInSql).replace(":ids", ids);
+            int affectedRecords = execute(CrudOperation.DELETE_MANY, st, () -> st.executeUpdate(sql));
+            Arrays.stream(entities).forEach(e -> afterWrite(CrudOperation.DELETE_MANY, e));
          //   System.out.println(affectedRecords);
-        } catch (Exception e) {
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    /**
+     * If the entity has a {@link Version} field, the UPDATE only matches the row while its VERSION is unchanged
+     * and increments it, and the entity's version is incremented to match.
+     * @throws OptimisticLockException if the row was changed or deleted since the entity was read
+     */
+    public void update(T entity) throws OptimisticLockException {
+        Optional<Field> versionField = getVersionField(entity);
+        try {
+            PreparedStatement ps = prepareUpdate(versionField);
+            Long version = bindUpdate(entity, versionField, ps);
+            int recordsAffected = execute(CrudOperation.UPDATE, ps, ps::executeUpdate);
+            completeUpdate(entity, versionField, version, recordsAffected);
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
-    public void update(T entity) {
+
+    /**
+     * Updates all entities with a single JDBC batch, with the same version checks as {@link #update(Object)}.
+     * @throws OptimisticLockException if any row had changed; the caller should roll back, as the other rows were updated
+     */
+    public void updateAll(List<T> entities) throws OptimisticLockException {
+        if (entities.isEmpty()) return;
+        Optional<Field> versionField = getVersionField(entities.get(0));
         try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.UPDATE, this::getUpdateSql));
-            mapForUpdate(entity, ps);
-            ps.setLong(5, getIdByAnnotation(entity));
-            ps.executeUpdate();
+            PreparedStatement ps = prepareUpdate(versionField);
+            List<Long> versions = new ArrayList<>();
+            for (T entity : entities) {
+                versions.add(bindUpdate(entity, versionField, ps));
+                ps.addBatch();
+            }
+            int[] recordsAffected = execute(CrudOperation.UPDATE, ps, ps::executeBatch);
+            for (int i = 0; i < entities.size(); i++) {
+                completeUpdate(entities.get(i), versionField, versions.get(i), recordsAffected[i]);
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
-    private String getSqlByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter){
+
+    private PreparedStatement prepareUpdate(Optional<Field> versionField) throws SQLException {
+        String sql = getSqlByAnnotation(CrudOperation.UPDATE, this::getUpdateSql);
+        return connection.prepareStatement(versionField.isPresent() ? addVersionCheck(sql) : sql);
+    }
+
+    /**
+     * @return the version the row is expected to have, null if the entity is not versioned
+     */
+    private Long bindUpdate(T entity, Optional<Field> versionField, PreparedStatement ps) throws SQLException {
+        mapForUpdate(entity, ps);
+        int parameterCount = ps.getParameterMetaData().getParameterCount();
+        Long version = versionField.map(f -> getVersion(f, entity)).orElse(null);
+        if (versionField.isPresent()) {
+            ps.setLong(parameterCount - 1, getIdByAnnotation(entity));
+            ps.setObject(parameterCount, version);
+        } else {
+            ps.setLong(parameterCount, getIdByAnnotation(entity));
+        }
+        return version;
+    }
+
+    private void completeUpdate(T entity, Optional<Field> versionField, Long version, int recordsAffected) {
+        if (versionField.isPresent() && recordsAffected == 0) {
+            postConflict(entity);
+            throw new OptimisticLockException("Entity was changed or deleted since it was read: " + entity + ", version " + version);
+        }
+        versionField.ifPresent(f -> setVersion(f, entity, version + 1));
+        afterWrite(CrudOperation.UPDATE, entity);
+    }
+
+    /**
+     * Reads the entity, applies the mutation and updates it, starting over with a fresh copy
+     * whenever another writer got there first.
+     * @return the updated entity
+     * @throws OptimisticLockException if every attempt conflicted
+     */
+    public T updateWithRetry(Long id, Consumer<? super T> mutation, int maxAttempts) throws OptimisticLockException {
+        for (int attempt = 1; ; attempt++) {
+            T entity = findById(id).orElseThrow(() -> new NoSuchElementException("No entity found with ID " + id));
+            mutation.accept(entity);
+            try {
+                update(entity);
+                return entity;
+            } catch (OptimisticLockException e) {
+                if (attempt >= maxAttempts) throw e;
+            }
+        }
+    }
+
+    /**
+     * @return an action that sets the entity's ID and version back to their current values,
+     * e.g. after the transaction that saved or updated it was rolled back
+     */
+    Runnable captureState(T entity) {
+        Map<Field, Object> values = new HashMap<>();
+        Arrays.stream(entity.getClass().getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Id.class) || f.isAnnotationPresent(Version.class))
+                .forEach(f -> {
+                    f.setAccessible(true);
+                    try {
+                        values.put(f, f.get(entity));
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+        return () -> values.forEach((f, value) -> {
+            try {
+                f.set(entity, value);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Unable to restore field value");
+            }
+        });
+    }
+
+    private static String addVersionCheck(String updateSql) {
+        int whereIdx = updateSql.toUpperCase().lastIndexOf("WHERE");
+        return updateSql.substring(0, whereIdx).stripTrailing() + ", " + VERSION_COLUMN + "=" + VERSION_COLUMN + "+1 "
+                + updateSql.substring(whereIdx).stripTrailing() + " AND " + VERSION_COLUMN + "=?";
+    }
+
+    private Optional<Field> getVersionField(T entity) {
+        return Arrays.stream(entity.getClass().getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Version.class))
+                .peek(f -> f.setAccessible(true))
+                .findFirst();
+    }
+
+    private Long getVersion(Field versionField, T entity) {
+        try {
+            return (Long) versionField.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to get version field value");
+        }
+    }
+
+    private void setVersion(Field versionField, T entity, long version) {
+        try {
+            versionField.set(entity, version);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to set version field value");
+        }
+    }
+    String getSqlByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter){
         Stream<SQL> mutiSqlStream = Arrays.stream(this.getClass().getDeclaredMethods())
                 .filter(m -> m.isAnnotationPresent(MultiSQL.class))
                 .map(m -> m.getAnnotation(MultiSQL.class))
@@ -177,9 +572,33 @@ public abstract class CrudRepository<T> {
     protected String getCountSql() {throw new RuntimeException("SQL not defined");};
     protected String getFindAllSql() {throw new RuntimeException("SQL not defined");};
     protected String getSaveSql() {throw new RuntimeException("SQL not defined");};
+    /**
+     * @return SQL selecting at most a number of entities with an ID in a range, ordered by ID, e.g.
+     * "SELECT ... WHERE ID BETWEEN ? AND ? ORDER BY ID FETCH FIRST ? ROWS ONLY"
+     */
+    protected String getFindByIdRangeSql() {throw new RuntimeException("SQL not defined");};
+    protected String getCountByIdRangeSql() {throw new RuntimeException("SQL not defined");};
+    protected String getFindIdBoundsSql() {throw new RuntimeException("SQL not defined");};
+    /**
+     * @return SQL selecting the entities whose ID is in the (':ids') named parameter, ordered by ID, e.g.
+     * "SELECT ... WHERE ID IN (:ids) ORDER BY ID"
+     */
+    protected String getFindAllByIdSql() {throw new RuntimeException("SQL not defined");};
 
     protected void postSave(T entity, long id) {}
 
+    /**
+     * Called after every successful save, update or delete of an entity.
+     * Override to drop any state derived from the table, e.g. cached aggregates.
+     */
+    protected void postWrite(CrudOperation operationType, T entity) {}
+
+    /**
+     * Called when an update found the entity's row changed by someone else.
+     * Override to drop any cached copy of the entity.
+     */
+    protected void postConflict(T entity) {}
+
     protected String getUpdateSql(){throw new RuntimeException("SQL not defined");};
     abstract T extractEntityFromResultSet(ResultSet rs) throws SQLException;
     /**
@@ -0,0 +1,65 @@
+package com.elenasuslova.peopledb.repository;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A point in time by which repository calls made through {@link #call(Supplier)} or {@link #run(Runnable)}
+ * must have finished. Statements still running when it passes are cancelled.
+ * <p>
+ * The deadline applies to the current thread only. Nested deadlines never extend the enclosing one.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * @return the deadline of the innermost {@link #call(Supplier)} or {@link #run(Runnable)} on this thread
+     */
+    public static Optional<Deadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    public Deadline earliest(Deadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+    }
+
+    public <R> R call(Supplier<R> action) {
+        Deadline enclosing = CURRENT.get();
+        CURRENT.set(earliest(enclosing));
+        try {
+            return action.get();
+        } finally {
+            if (enclosing == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(enclosing);
+            }
+        }
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+}
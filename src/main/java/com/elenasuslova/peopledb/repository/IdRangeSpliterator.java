@@ -0,0 +1,108 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.model.CrudOperation;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * One ID range of a {@link CrudRepository#spliterator(DataSource)} scan, read page by page on connections borrowed
+ * from dataSource.
+ */
+class IdRangeSpliterator<T> implements Spliterator<T> {
+    private final CrudRepository<T> repository;
+    private final DataSource dataSource;
+    private final Deque<T> page = new ArrayDeque<>();
+    private long fromId;
+    private long toId;
+    private long estimatedSize = -1;
+    private boolean exhausted;
+
+    IdRangeSpliterator(CrudRepository<T> repository, DataSource dataSource, long fromId, long toId) {
+        this.repository = repository;
+        this.dataSource = dataSource;
+        this.fromId = fromId;
+        this.toId = toId;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (page.isEmpty() && !exhausted) {
+            fetchPage();
+        }
+        T entity = page.poll();
+        if (entity == null) return false;
+        action.accept(entity);
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (exhausted || toId - fromId < 2 || estimateSize() <= CrudRepository.SCAN_SPLIT_THRESHOLD) return null;
+        long midId = fromId + (toId - fromId) / 2;
+        IdRangeSpliterator<T> upperHalf = new IdRangeSpliterator<>(repository, dataSource, midId + 1, toId);
+        toId = midId;
+        estimatedSize = -1;
+        return upperHalf;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (estimatedSize < 0) {
+            estimatedSize = page.size() + (exhausted ? 0 : countRange());
+        }
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    private long countRange() {
+        try (Connection scanConnection = dataSource.getConnection()) {
+            PreparedStatement ps = scanConnection.prepareStatement(repository.getSqlByAnnotation(CrudOperation.COUNT_BY_ID_RANGE, repository::getCountByIdRangeSql));
+            ps.setLong(1, fromId);
+            ps.setLong(2, toId);
+            ResultSet rs = repository.execute(CrudOperation.COUNT_BY_ID_RANGE, ps, ps::executeQuery);
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void fetchPage() {
+        try (Connection scanConnection = dataSource.getConnection()) {
+            PreparedStatement ps = scanConnection.prepareStatement(repository.getSqlByAnnotation(CrudOperation.FIND_BY_ID_RANGE, repository::getFindByIdRangeSql),
+                    ResultSet.TYPE_SCROLL_INSENSITIVE,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setLong(1, fromId);
+            ps.setLong(2, toId);
+            ps.setInt(3, CrudRepository.SCAN_PAGE_SIZE);
+            ResultSet rs = repository.execute(CrudOperation.FIND_BY_ID_RANGE, ps, ps::executeQuery);
+            int rows = 0;
+            while (rs.next()) {
+                page.add(repository.extractEntityFromResultSet(rs));
+                rows++;
+            }
+            if (rows < CrudRepository.SCAN_PAGE_SIZE) {
+                exhausted = true;
+            } else {
+                fromId = repository.getIdByAnnotation(page.getLast()) + 1;
+            }
+            if (estimatedSize > 0) {
+                estimatedSize = Math.max(0, estimatedSize - rows);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package com.elenasuslova.peopledb.repository;
 
 import com.elenasuslova.peopledb.annotation.SQL;
-import com.elenasuslova.peopledb.model.Address;
-import com.elenasuslova.peopledb.model.CrudOperation;
-import com.elenasuslova.peopledb.model.Person;
-import com.elenasuslova.peopledb.model.Region;
+import com.elenasuslova.peopledb.event.ChangeEvent;
+import com.elenasuslova.peopledb.event.ChangeFeed;
+import com.elenasuslova.peopledb.exception.UnableToSaveException;
+import com.elenasuslova.peopledb.model.*;
+import com.elenasuslova.peopledb.snapshot.PeopleSnapshot;
 
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class PeopleRepository extends CrudRepository<Person> {
 
@@ -22,8 +29,8 @@ public class PeopleRepository extends CrudRepository<Person> {
     public static final String SELECT_COUNT_SQL = "SELECT COUNT (*) FROM PEOPLE";
     public static final String FIND_BY_ID_SQL = """
             SELECT
-            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
-            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME, CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL,
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL, PARENT.VERSION AS PARENT_VERSION,
+            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME, CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL, CHILD.VERSION AS CHILD_VERSION,
             HOME.ID AS HOME_ID, HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2, HOME.CITY AS HOME_CITY, HOME.STATE AS HOME_STATE, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTY AS HOME_COUNTY, HOME.REGION AS HOME_REGION, HOME.COUNTRY AS HOME_COUNTRY,
             BIZ.ID AS BIZ_ID, BIZ.STREET_ADDRESS AS BIZ_STREET_ADDRESS, BIZ.ADDRESS2 AS BIZ_ADDRESS2, BIZ.CITY AS BIZ_CITY, BIZ.STATE AS BIZ_STATE, BIZ.POSTCODE AS BIZ_POSTCODE, BIZ.COUNTY AS BIZ_COUNTY, BIZ.REGION AS BIZ_REGION, BIZ.COUNTRY AS BIZ_COUNTRY
             FROM PEOPLE AS PARENT
@@ -35,28 +42,121 @@ public class PeopleRepository extends CrudRepository<Person> {
 
     public static final String FIND_ALL_SQL = """
             SELECT 
-            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL 
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL, PARENT.VERSION AS PARENT_VERSION 
             FROM PEOPLE AS PARENT
             FETCH FIRST 100 ROWS ONLY
              """;
+    public static final String FIND_BY_ID_RANGE_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL, PARENT.VERSION AS PARENT_VERSION
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.ID BETWEEN ? AND ?
+            ORDER BY PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    public static final String FIND_ALL_BY_ID_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL, PARENT.VERSION AS PARENT_VERSION
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.ID IN (:ids)
+            ORDER BY PARENT.ID
+            """;
+    public static final String COUNT_BY_ID_RANGE_SQL = "SELECT COUNT(*) FROM PEOPLE WHERE ID BETWEEN ? AND ?";
+    public static final String FIND_ID_BOUNDS_SQL = "SELECT MIN(ID), MAX(ID) FROM PEOPLE";
     public static final String DELETE_ONE_SQL = "DELETE FROM PEOPLE WHERE ID=?";
     public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID IN (:ids)";
     public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=? WHERE ID=?";
+    public static final String SALARY_STATS_SQL = "SELECT COUNT(*), SUM(SALARY), AVG(SALARY), MIN(SALARY), MAX(SALARY) FROM PEOPLE";
+    /**
+     * ':groupKey' is replaced with the SQL expression for the requested {@link StatsGrouping}
+     */
+    public static final String GROUPED_SALARY_STATS_SQL = """
+            SELECT GROUP_KEY, COUNT(*), SUM(SALARY), AVG(SALARY), MIN(SALARY), MAX(SALARY)
+            FROM (
+                SELECT :groupKey AS GROUP_KEY, PERSON.SALARY AS SALARY
+                FROM PEOPLE AS PERSON
+                LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            )
+            GROUP BY GROUP_KEY
+            ORDER BY GROUP_KEY
+            """;
+    public static final String FIND_DESCENDANTS_SQL = """
+            WITH RECURSIVE TREE(ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION, PARENT_ID, DEPTH, PATH) AS (
+                SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION, PARENT_ID, 0, CAST(CONCAT(',', ID, ',') AS VARCHAR)
+                FROM PEOPLE
+                WHERE ID = ?
+                UNION ALL
+                SELECT CHILD.ID, CHILD.FIRST_NAME, CHILD.LAST_NAME, CHILD.DOB, CHILD.SALARY, CHILD.EMAIL, CHILD.VERSION, CHILD.PARENT_ID, TREE.DEPTH + 1, CONCAT(TREE.PATH, CHILD.ID, ',')
+                FROM PEOPLE AS CHILD
+                INNER JOIN TREE ON CHILD.PARENT_ID = TREE.ID
+                WHERE TREE.DEPTH < ? AND LOCATE(CONCAT(',', CHILD.ID, ','), TREE.PATH) = 0
+            )
+            SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION, PARENT_ID, DEPTH FROM TREE ORDER BY DEPTH
+            """;
+    public static final String FIND_ANCESTORS_SQL = """
+            WITH RECURSIVE TREE(ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION, PARENT_ID, DEPTH, PATH) AS (
+                SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION, PARENT_ID, 0, CAST(CONCAT(',', ID, ',') AS VARCHAR)
+                FROM PEOPLE
+                WHERE ID = ?
+                UNION ALL
+                SELECT PARENT.ID, PARENT.FIRST_NAME, PARENT.LAST_NAME, PARENT.DOB, PARENT.SALARY, PARENT.EMAIL, PARENT.VERSION, PARENT.PARENT_ID, TREE.DEPTH + 1, CONCAT(TREE.PATH, PARENT.ID, ',')
+                FROM PEOPLE AS PARENT
+                INNER JOIN TREE ON PARENT.ID = TREE.PARENT_ID
+                WHERE LOCATE(CONCAT(',', PARENT.ID, ','), TREE.PATH) = 0
+            )
+            SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, VERSION, PARENT_ID, DEPTH FROM TREE ORDER BY DEPTH
+            """;
+    public static final String SALARY_PERCENTILE_SQL = "SELECT PERCENTILE_CONT(?) WITHIN GROUP (ORDER BY SALARY) FROM PEOPLE";
+    /**
+     * ':groupKey' is replaced with the SQL expression for the requested {@link StatsGrouping}
+     */
+    public static final String GROUPED_SALARY_PERCENTILE_SQL = """
+            SELECT GROUP_KEY, PERCENTILE_CONT(?) WITHIN GROUP (ORDER BY SALARY)
+            FROM (
+                SELECT :groupKey AS GROUP_KEY, PERSON.SALARY AS SALARY
+                FROM PEOPLE AS PERSON
+                LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            )
+            GROUP BY GROUP_KEY
+            ORDER BY GROUP_KEY
+            """;
 
     public AddressRepository addressRepository;
     public PeopleRepository(Connection connection) {
 
         super(connection);
         addressRepository = new AddressRepository(connection);
+        addressRepository.onAddressWrite(this::postAddressWrite);
+    }
+
+    public PeopleRepository(ReplicaRouter replicaRouter) {
+        super(replicaRouter);
+        addressRepository = new AddressRepository(replicaRouter);
+        addressRepository.onAddressWrite(this::postAddressWrite);
     }
 
-    private Map<String, Integer> aliasColIdxMap = new HashMap<>();
+    private Map<String, Integer> aliasColIdxMap = new ConcurrentHashMap<>();
+    private final AtomicLong cacheGeneration = new AtomicLong();
+    private final AtomicBoolean uncommittedWrites = new AtomicBoolean();
+    private final AtomicReference<Cached<SalaryStats>> salaryStatsCache = new AtomicReference<>();
+    private final Map<StatsGrouping, Cached<List<GroupedSalaryStats>>> groupedSalaryStatsCache = new ConcurrentHashMap<>();
+    private final Map<Double, Cached<BigDecimal>> salaryPercentileCache = new ConcurrentHashMap<>();
+    private final Map<GroupedPercentile, Cached<Map<String, BigDecimal>>> groupedSalaryPercentileCache = new ConcurrentHashMap<>();
+    private volatile long salaryCacheTtlNanos = Long.MAX_VALUE;
+    private volatile boolean tracksTransactionEnd;
+    private PeopleSnapshot snapshot;
+    private Map<Long, Person> hotSet;
+
     @Override
     @SQL(value = SELECT_COUNT_SQL, operationType = CrudOperation.COUNT)
     @SQL(value = DELETE_ONE_SQL, operationType = CrudOperation.DELETE_ONE)
     @SQL(value = DELETE_IN_SQL, operationType = CrudOperation.DELETE_MANY)
     @SQL(value = FIND_BY_ID_SQL, operationType = CrudOperation.FIND_BY_ID)
     @SQL(value = FIND_ALL_SQL, operationType = CrudOperation.FIND_ALL)
+    @SQL(value = FIND_BY_ID_RANGE_SQL, operationType = CrudOperation.FIND_BY_ID_RANGE)
+    @SQL(value = COUNT_BY_ID_RANGE_SQL, operationType = CrudOperation.COUNT_BY_ID_RANGE)
+    @SQL(value = FIND_ID_BOUNDS_SQL, operationType = CrudOperation.FIND_ID_BOUNDS)
+    @SQL(value = FIND_ALL_BY_ID_SQL, operationType = CrudOperation.FIND_ALL_BY_ID)
     Person extractEntityFromResultSet(ResultSet rs) throws SQLException{
         Person finalParent = null;
         do {
@@ -79,6 +179,66 @@ public class PeopleRepository extends CrudRepository<Person> {
         return finalParent;
     }
 
+    /**
+     * Loads a person and all of their descendants down to maxDepth levels in a single query.
+     * @param maxDepth 0 loads only the person, 1 adds their children, and so on
+     * @return the person with children linked at every level, empty if not found
+     * @throws IllegalArgumentException if maxDepth is negative
+     */
+    public Optional<Person> findDescendants(Long id, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Max depth must not be negative: " + maxDepth);
+        }
+        Map<Long, Long> parentIds = new HashMap<>();
+        Map<Long, Person> tree = findTree(CrudOperation.FIND_DESCENDANTS, FIND_DESCENDANTS_SQL, id, maxDepth, parentIds);
+        tree.values().stream()
+                .filter(person -> !person.getId().equals(id))
+                .forEach(person -> tree.get(parentIds.get(person.getId())).addChild(person));
+        return Optional.ofNullable(tree.get(id));
+    }
+
+    /**
+     * Loads the chain of parents of a person in a single query.
+     * @return the ancestors ordered from the direct parent up to the root, each linked to the next
+     */
+    public List<Person> findAncestors(Long id) {
+        List<Person> chain = new ArrayList<>(findTree(CrudOperation.FIND_ANCESTORS, FIND_ANCESTORS_SQL, id, -1, new HashMap<>()).values());
+        for (int i = 1; i < chain.size(); i++) {
+            chain.get(i).addChild(chain.get(i - 1));
+        }
+        return chain.isEmpty() ? chain : chain.subList(1, chain.size());
+    }
+
+    /**
+     * @return people keyed by ID in the order of the query, i.e. by depth. Their PARENT_IDs are put into parentIds
+     * so that the caller can link them.
+     */
+    private Map<Long, Person> findTree(CrudOperation operationType, String sql, Long id, int maxDepth, Map<Long, Long> parentIds) {
+        Map<Long, Person> tree = new LinkedHashMap<>();
+        try {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setLong(1, id);
+            if (maxDepth >= 0) {
+                ps.setInt(2, maxDepth);
+            }
+            ResultSet rs = execute(operationType, ps, ps::executeQuery);
+            while (rs.next()) {
+                Person person = new Person(rs.getLong("ID"), rs.getString("FIRST_NAME"), rs.getString("LAST_NAME"),
+                        ZonedDateTime.of(rs.getTimestamp("DOB").toLocalDateTime(), ZoneId.of("+0")), rs.getBigDecimal("SALARY"));
+                person.setEmail(rs.getString("EMAIL"));
+                person.setVersion(rs.getLong("VERSION"));
+                long parentId = rs.getLong("PARENT_ID");
+                if (!rs.wasNull()) {
+                    parentIds.put(person.getId(), parentId);
+                }
+                tree.put(person.getId(), person);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return tree;
+    }
+
     private Optional<Person> extractPerson(ResultSet rs, String aliasPrefix) throws SQLException {
         Long personId = getValueByAlias(aliasPrefix + "ID", rs, Long.class);
         if (personId == null) { return Optional.empty(); }
@@ -87,6 +247,11 @@ public class PeopleRepository extends CrudRepository<Person> {
         ZonedDateTime dob = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", rs, Timestamp.class).toLocalDateTime(), ZoneId.of("+0"));
         BigDecimal salary = getValueByAlias(aliasPrefix + "SALARY", rs, BigDecimal.class);
         Person person = new Person(personId, firstName, lastName, dob, salary);
+        person.setEmail(getValueByAlias(aliasPrefix + "EMAIL", rs, String.class));
+        Long version = getValueByAlias(aliasPrefix + "VERSION", rs, Long.class);
+        if (version != null) {
+            person.setVersion(version);
+        }
         return Optional.of(person);
     }
 
@@ -113,6 +278,10 @@ public class PeopleRepository extends CrudRepository<Person> {
 
     private int getIndexForAlias(String alias, ResultSet rs, int columnCount) throws SQLException {
         Integer foundIdx = aliasColIdxMap.getOrDefault(alias, 0);
+        // the map is shared by all queries, so a cached index is only valid if it points at the same alias in this one
+        if (foundIdx > columnCount || (foundIdx > 0 && !alias.equals(rs.getMetaData().getColumnLabel(foundIdx)))) {
+            foundIdx = 0;
+        }
         if (foundIdx == 0) {
             for (int colIdx = 1; colIdx<= columnCount; colIdx++) {
                 if (alias.equals(rs.getMetaData().getColumnLabel(colIdx))) {
@@ -163,9 +332,338 @@ public class PeopleRepository extends CrudRepository<Person> {
                 .forEach(this::save);
     }
 
+    @Override
+    protected void postWrite(CrudOperation operationType, Person entity) {
+        salaryCachesWritten();
+        forget(entity.getId());
+        if (snapshot != null) {
+            entity.getParent().map(Person::getId).ifPresent(snapshot::invalidate);
+        }
+    }
+
+    @Override
+    protected void postConflict(Person entity) {
+        forget(entity.getId());
+    }
+
+    /**
+     * Called by the address repository after an address was updated or deleted. The people living or working there
+     * embed the address in the snapshot and the hot set, and a deleted address also cleared their HOME_ADDRESS or
+     * BIZ_ADDRESS through ON DELETE SET NULL.
+     */
+    private void postAddressWrite(CrudOperation operationType, Set<Long> personIds) {
+        salaryCachesWritten();
+        personIds.forEach(this::forget);
+        if (operationType != CrudOperation.UPDATE) {
+            personIds.forEach(id -> recordChange(new ChangeEvent(Person.class, id, CrudOperation.UPDATE, Set.of("HOME_ADDRESS", "BIZ_ADDRESS"))));
+        }
+    }
+
+    private void salaryCachesWritten() {
+        uncommittedWrites.set(true);
+        clearSalaryCaches();
+    }
+
+    /**
+     * Called after the transaction of the connection wrapped by the change feed committed or rolled back. The caches
+     * are not filled while it holds writes through this repository; they start again empty.
+     */
+    private void postTransactionEnd() {
+        if (uncommittedWrites.getAndSet(false)) {
+            clearSalaryCaches();
+        }
+    }
+
+    private void clearSalaryCaches() {
+        cacheGeneration.incrementAndGet();
+        salaryStatsCache.set(null);
+        groupedSalaryStatsCache.clear();
+        salaryPercentileCache.clear();
+        groupedSalaryPercentileCache.clear();
+    }
+
+    private void forget(Long id) {
+        if (snapshot != null) {
+            snapshot.invalidate(id);
+        }
+        if (hotSet != null) {
+            synchronized (hotSet) {
+                hotSet.remove(id);
+                hotSet.values().removeIf(person -> person.getChildren().stream().anyMatch(child -> id.equals(child.getId())));
+            }
+        }
+    }
+
+    @Override
+    public void publishChangesTo(ChangeFeed changeFeed) {
+        super.publishChangesTo(changeFeed);
+        addressRepository.publishChangesTo(changeFeed);
+        changeFeed.onTransactionEnd(connection, this::postTransactionEnd);
+        tracksTransactionEnd = true;
+    }
+
+    @Override
+    public void setDefaultTimeout(CrudOperation operationType, Duration timeout) {
+        super.setDefaultTimeout(operationType, timeout);
+        addressRepository.setDefaultTimeout(operationType, timeout);
+    }
+
+    /**
+     * The permits are shared with the address repository, so addresses saved along with people count towards the same limit.
+     */
+    @Override
+    public void limitConcurrency(Semaphore permits, Duration maxQueueWait) {
+        super.limitConcurrency(permits, maxQueueWait);
+        addressRepository.limitConcurrency(permits, maxQueueWait);
+    }
+
+    /**
+     * Serves findById from the given snapshot while it holds a valid record for the ID.
+     * Writes through this repository invalidate the affected records.
+     */
+    public void setSnapshot(PeopleSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Remembers the most recently found people, up to maxSize, so that they can be written to a {@link PeopleSnapshot}.
+     */
+    public void trackHotSet(int maxSize) {
+        hotSet = Collections.synchronizedMap(new LinkedHashMap<>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Person> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public List<Person> getHotSet() {
+        if (hotSet == null) return List.of();
+        synchronized (hotSet) {
+            return new ArrayList<>(hotSet.values());
+        }
+    }
+
+    @Override
+    public Optional<Person> findById(Long id) {
+        Optional<Person> person = snapshot == null ? Optional.empty() : snapshot.find(id);
+        if (person.isEmpty()) {
+            person = super.findById(id);
+        }
+        if (hotSet != null) {
+            person.ifPresent(p -> hotSet.put(p.getId(), p));
+        }
+        return person;
+    }
+
+    /**
+     * Limits how long salary statistics are cached. Writes through this repository, including its address repository,
+     * clear the caches; without a TTL, writes made any other way are never seen by them.
+     */
+    public void setSalaryCacheTtl(Duration ttl) {
+        salaryCacheTtlNanos = ttl.toNanos();
+        clearSalaryCaches();
+    }
+
+    /**
+     * @return COUNT, SUM, AVG, MIN and MAX of SALARY over the whole PEOPLE table, computed by the database.
+     * The result is cached until the next write through this repository or the salary cache TTL.
+     */
+    public SalaryStats getSalaryStats() {
+        Cached<SalaryStats> cached = salaryStatsCache.get();
+        if (cached != null && cached.isFresh(salaryCacheTtlNanos)) return cached.value();
+        long generation = cacheGeneration.get();
+        boolean cacheable = isCacheable();
+        SalaryStats stats = querySalaryStats();
+        if (cacheable) {
+            Cached<SalaryStats> loaded = new Cached<>(stats);
+            salaryStatsCache.set(loaded);
+            if (cacheGeneration.get() != generation) {
+                salaryStatsCache.compareAndSet(loaded, null);
+            }
+        }
+        return stats;
+    }
+
+    public List<GroupedSalaryStats> getSalaryStatsGroupedBy(StatsGrouping grouping) {
+        return getCached(groupedSalaryStatsCache, grouping, () -> querySalaryStatsGroupedBy(grouping));
+    }
+
+    /**
+     * @param percentile value between 0 and 1, e.g. 0.5 for the median
+     * @return the interpolated salary at the given percentile, empty if there are no people
+     */
+    public Optional<BigDecimal> getSalaryPercentile(double percentile) {
+        checkPercentile(percentile);
+        return Optional.ofNullable(getCached(salaryPercentileCache, percentile, () -> querySalaryPercentile(percentile)));
+    }
+
+    /**
+     * @param percentile value between 0 and 1, e.g. 0.5 for the median
+     * @return the interpolated salary at the given percentile per group, ordered by group
+     */
+    public Map<String, BigDecimal> getSalaryPercentileGroupedBy(StatsGrouping grouping, double percentile) {
+        checkPercentile(percentile);
+        return getCached(groupedSalaryPercentileCache, new GroupedPercentile(grouping, percentile),
+                () -> querySalaryPercentileGroupedBy(grouping, percentile));
+    }
+
+    /**
+     * Caches the result of the query unless a write cleared the caches while it ran, in which case the result
+     * may already be stale and is only returned.
+     */
+    private <K, V> V getCached(Map<K, Cached<V>> cache, K key, Supplier<V> query) {
+        Cached<V> cached = cache.get(key);
+        if (cached != null && cached.isFresh(salaryCacheTtlNanos)) return cached.value();
+        long generation = cacheGeneration.get();
+        boolean cacheable = isCacheable();
+        V value = query.get();
+        if (value != null && cacheable) {
+            Cached<V> loaded = new Cached<>(value);
+            cache.put(key, loaded);
+            if (cacheGeneration.get() != generation) {
+                cache.remove(key, loaded);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return true if a query on the connection now sees only committed rows: it is in auto-commit mode, or the change
+     * feed tells us when its transaction ends and no write through this repository happened in the current one
+     */
+    private boolean isCacheable() {
+        try {
+            return connection.getAutoCommit() || (tracksTransactionEnd && !uncommittedWrites.get());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private SalaryStats querySalaryStats() {
+        try {
+            PreparedStatement ps = connection.prepareStatement(SALARY_STATS_SQL);
+            ResultSet rs = execute(CrudOperation.SALARY_STATS, ps, ps::executeQuery);
+            rs.next();
+            return extractSalaryStats(rs, 1);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<GroupedSalaryStats> querySalaryStatsGroupedBy(StatsGrouping grouping) {
+        List<GroupedSalaryStats> groups = new ArrayList<>();
+        try {
+            PreparedStatement ps = connection.prepareStatement(GROUPED_SALARY_STATS_SQL.replace(":groupKey", getGroupKeySql(grouping)));
+            ResultSet rs = execute(CrudOperation.GROUPED_SALARY_STATS, ps, ps::executeQuery);
+            while (rs.next()) {
+                groups.add(new GroupedSalaryStats(rs.getString(1), extractSalaryStats(rs, 2)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return Collections.unmodifiableList(groups);
+    }
+
+    private BigDecimal querySalaryPercentile(double percentile) {
+        try {
+            PreparedStatement ps = connection.prepareStatement(SALARY_PERCENTILE_SQL);
+            ps.setDouble(1, percentile);
+            ResultSet rs = execute(CrudOperation.SALARY_PERCENTILE, ps, ps::executeQuery);
+            return rs.next() ? rs.getBigDecimal(1) : null;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Map<String, BigDecimal> querySalaryPercentileGroupedBy(StatsGrouping grouping, double percentile) {
+        Map<String, BigDecimal> groups = new LinkedHashMap<>();
+        try {
+            PreparedStatement ps = connection.prepareStatement(GROUPED_SALARY_PERCENTILE_SQL.replace(":groupKey", getGroupKeySql(grouping)));
+            ps.setDouble(1, percentile);
+            ResultSet rs = execute(CrudOperation.GROUPED_SALARY_PERCENTILE, ps, ps::executeQuery);
+            while (rs.next()) {
+                groups.put(rs.getString(1), rs.getBigDecimal(2));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return Collections.unmodifiableMap(groups);
+    }
+
+    private static void checkPercentile(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+        }
+    }
+
+    private record GroupedPercentile(StatsGrouping grouping, double percentile) {
+    }
+
+    private record Cached<V>(V value, long loadedAtNanos) {
+        Cached(V value) {
+            this(value, System.nanoTime());
+        }
+
+        boolean isFresh(long ttlNanos) {
+            return System.nanoTime() - loadedAtNanos < ttlNanos;
+        }
+    }
+
+    private static String getGroupKeySql(StatsGrouping grouping) {
+        return switch (grouping) {
+            case REGION -> "HOME.REGION";
+            case STATE -> "HOME.STATE";
+            case DOB_DECADE -> "CAST(EXTRACT(YEAR FROM PERSON.DOB) / 10 * 10 AS VARCHAR)";
+        };
+    }
+
+    private static SalaryStats extractSalaryStats(ResultSet rs, int firstColumn) throws SQLException {
+        return new SalaryStats(rs.getLong(firstColumn),
+                Optional.ofNullable(rs.getBigDecimal(firstColumn + 1)).orElse(BigDecimal.ZERO),
+                rs.getBigDecimal(firstColumn + 2),
+                rs.getBigDecimal(firstColumn + 3),
+                rs.getBigDecimal(firstColumn + 4));
+    }
+
+    /**
+     * Saves a person together with all of their descendants and addresses using one batch per tree level.
+     * All new addresses are inserted first in a single batch, and an Address instance shared by several people
+     * is written once. Each level of people is then inserted in one batch, after the level above it has received
+     * the generated IDs that its PARENT_ID refers to. People that already have an ID are not written again,
+     * but their new descendants are saved under them.
+     */
+    public Person saveGraph(Person root) throws UnableToSaveException {
+        List<List<Person>> levels = new ArrayList<>();
+        Set<Person> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Person> level = List.of(root);
+        visited.add(root);
+        while (!level.isEmpty()) {
+            levels.add(level.stream().filter(person -> person.getId() == null).toList());
+            level = level.stream()
+                    .flatMap(person -> person.getChildren().stream())
+                    .filter(visited::add)
+                    .toList();
+        }
+
+        Set<Address> newAddresses = Collections.newSetFromMap(new IdentityHashMap<>());
+        levels.stream()
+                .flatMap(List::stream)
+                .flatMap(person -> Stream.of(person.getHomeAddress(), person.getBusinessAddress()))
+                .flatMap(Optional::stream)
+                .filter(address -> address.id() == null)
+                .forEach(newAddresses::add);
+        addressRepository.saveAll(new ArrayList<>(newAddresses));
+
+        levels.forEach(this::saveAll);
+        return root;
+    }
+
     private void associateAddressWithPerson(Optional<Address> address, PreparedStatement ps, int parameterIndex) throws SQLException {
         Address savedAddress;
-        if (address.isPresent()) {
+        if (address.isPresent() && address.get().id() != null) {
+            ps.setLong(parameterIndex, address.get().id());
+        } else if (address.isPresent()) {
             savedAddress = addressRepository.save(address.get());
             ps.setLong(parameterIndex, savedAddress.id());
         } else {
@@ -0,0 +1,89 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.model.ReplicaSelection;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Picks the connection for each repository call: writes always go to the primary, reads go to one of the replicas.
+ * <p>
+ * A thread that wrote through the router keeps reading from the primary for the read-your-writes window,
+ * so it sees its own changes even if the replicas lag behind.
+ */
+public class ReplicaRouter {
+    private final Connection primary;
+    private final List<Connection> replicas;
+    private final ReplicaSelection selection;
+    private final long readYourWritesNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicIntegerArray inFlightReads;
+    private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+
+    public ReplicaRouter(Connection primary, List<Connection> replicas) {
+        this(primary, replicas, ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(1));
+    }
+
+    public ReplicaRouter(Connection primary, List<Connection> replicas, ReplicaSelection selection, Duration readYourWritesWindow) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.selection = selection;
+        this.readYourWritesNanos = readYourWritesWindow.toNanos();
+        this.inFlightReads = new AtomicIntegerArray(replicas.size());
+    }
+
+    public Connection getPrimary() {
+        return primary;
+    }
+
+    public void recordWrite() {
+        lastWriteNanos.set(System.nanoTime());
+    }
+
+    /**
+     * @return true while the current thread is inside its read-your-writes window
+     */
+    public boolean isPinnedToPrimary() {
+        Long lastWrite = lastWriteNanos.get();
+        return lastWrite != null && System.nanoTime() - lastWrite < readYourWritesNanos;
+    }
+
+    /**
+     * Every connection returned here must be handed back through {@link #release(Connection)}.
+     */
+    public Connection acquireRead() {
+        if (replicas.isEmpty() || isPinnedToPrimary()) return primary;
+        int replica = switch (selection) {
+            case ROUND_ROBIN -> Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+            case LEAST_LOADED -> findLeastLoaded();
+        };
+        inFlightReads.incrementAndGet(replica);
+        return replicas.get(replica);
+    }
+
+    public void release(Connection connection) {
+        int replica = replicas.indexOf(connection);
+        if (replica >= 0) {
+            inFlightReads.decrementAndGet(replica);
+        }
+    }
+
+    public int getInFlightReads(int replica) {
+        return inFlightReads.get(replica);
+    }
+
+    private int findLeastLoaded() {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        int best = start;
+        for (int i = 1; i < replicas.size(); i++) {
+            int candidate = (start + i) % replicas.size();
+            if (inFlightReads.get(candidate) < inFlightReads.get(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,67 @@
+package com.elenasuslova.peopledb.repository;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The LOCK_TIMEOUT of one connection's session, which all statements on the connection share. Its original value
+ * is read once per connection. While writes with a deadline run on the connection it is lowered to the shortest
+ * time any of them has left, so a write sharing the session with one that has less time may give up its lock wait
+ * early, and it is put back to the original value once the last of them has finished.
+ * <p>
+ * A write whose deadline is further away than the original value costs no extra statement. Any other write
+ * runs up to two SET LOCK_TIMEOUT statements, within its concurrency permit but not counted by it, plus the
+ * SELECT that reads the original value the first time round. The connection is not held, so that the map entry
+ * goes away with it.
+ */
+class SessionLockTimeout {
+    private static final Map<Connection, SessionLockTimeout> BY_CONNECTION = new WeakHashMap<>();
+
+    private final long originalMillis;
+    private long currentMillis;
+    private int writers;
+
+    private SessionLockTimeout(Connection connection) throws SQLException {
+        ResultSet rs = connection.createStatement().executeQuery(CrudRepository.LOCK_TIMEOUT_SQL);
+        rs.next();
+        this.originalMillis = rs.getInt(1);
+        this.currentMillis = originalMillis;
+    }
+
+    static SessionLockTimeout of(Connection connection) throws SQLException {
+        synchronized (BY_CONNECTION) {
+            SessionLockTimeout lockTimeout = BY_CONNECTION.get(connection);
+            if (lockTimeout == null) {
+                lockTimeout = new SessionLockTimeout(connection);
+                BY_CONNECTION.put(connection, lockTimeout);
+            }
+            return lockTimeout;
+        }
+    }
+
+    /**
+     * @return true if the caller must call {@link #restore(Connection)} once its statement has finished
+     */
+    synchronized boolean lower(Connection connection, long remainingMillis) throws SQLException {
+        if (remainingMillis >= originalMillis) return false;
+        if (remainingMillis < currentMillis) {
+            set(connection, remainingMillis);
+        }
+        writers++;
+        return true;
+    }
+
+    synchronized void restore(Connection connection) throws SQLException {
+        if (--writers == 0 && currentMillis != originalMillis) {
+            set(connection, originalMillis);
+        }
+    }
+
+    private void set(Connection connection, long millis) throws SQLException {
+        connection.createStatement().execute(CrudRepository.SET_LOCK_TIMEOUT_SQL.replace(":millis", String.valueOf(millis)));
+        currentMillis = millis;
+    }
+}
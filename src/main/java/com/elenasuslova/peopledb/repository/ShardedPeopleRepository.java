@@ -0,0 +1,165 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.exception.UnableToSaveException;
+import com.elenasuslova.peopledb.model.GroupedSalaryStats;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.SalaryStats;
+import com.elenasuslova.peopledb.model.StatsGrouping;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads people over several databases, one {@link PeopleRepository} per shard.
+ * <p>
+ * Shard N hands out IDs from [N * shardIdRange + 1, (N + 1) * shardIdRange], so the shard owning an entity
+ * is known from its ID alone. The range end is the identity's MAXVALUE, so a full shard fails to save instead of
+ * handing out IDs of the next one. A new person is placed on their parent's shard when they have one, otherwise by a hash
+ * of their name and e-mail; children are saved along with their parent, so the FIND_BY_ID_SQL join never has to leave
+ * a shard. findAll, count and the salary aggregations query all shards in parallel and merge the results.
+ */
+public class ShardedPeopleRepository {
+    public static final long DEFAULT_SHARD_ID_RANGE = 1_000_000_000_000L;
+    public static final String MAX_ID_SQL = "SELECT COALESCE(MAX(ID), 0) FROM PEOPLE";
+    public static final String RESTART_ID_SQL = "ALTER TABLE PEOPLE ALTER COLUMN ID RESTART WITH :start";
+    public static final String LIMIT_ID_SQL = "ALTER TABLE PEOPLE ALTER COLUMN ID SET MAXVALUE :end";
+
+    private final List<PeopleRepository> shards = new ArrayList<>();
+    private final long shardIdRange;
+
+    public ShardedPeopleRepository(List<Connection> shardConnections) {
+        this(shardConnections, DEFAULT_SHARD_ID_RANGE);
+    }
+
+    public ShardedPeopleRepository(List<Connection> shardConnections, long shardIdRange) {
+        this.shardIdRange = shardIdRange;
+        for (int shard = 0; shard < shardConnections.size(); shard++) {
+            Connection connection = shardConnections.get(shard);
+            reserveIdRange(connection, shard);
+            shards.add(new PeopleRepository(connection));
+        }
+    }
+
+    private void reserveIdRange(Connection connection, int shard) {
+        long firstId = shard * shardIdRange + 1;
+        long lastId = firstId + shardIdRange - 1;
+        try {
+            ResultSet rs = connection.createStatement().executeQuery(MAX_ID_SQL);
+            rs.next();
+            long maxId = rs.getLong(1);
+            if (maxId < firstId) {
+                connection.createStatement().execute(RESTART_ID_SQL.replace(":start", String.valueOf(firstId)));
+            } else if (maxId > lastId) {
+                throw new IllegalStateException("Shard %d already holds ID %d outside of its range".formatted(shard, maxId));
+            }
+            connection.createStatement().execute(LIMIT_ID_SQL.replace(":end", String.valueOf(lastId)));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Person save(Person entity) throws UnableToSaveException {
+        return shardFor(entity).save(entity);
+    }
+
+    public Person saveGraph(Person root) throws UnableToSaveException {
+        return shardFor(root).saveGraph(root);
+    }
+
+    public Optional<Person> findById(Long id) {
+        if (id < 1 || (id - 1) / shardIdRange >= shards.size()) return Optional.empty();
+        return shardForId(id).findById(id);
+    }
+
+    public void update(Person entity) {
+        shardForId(entity.getId()).update(entity);
+    }
+
+    public void delete(Person entity) {
+        shardForId(entity.getId()).delete(entity);
+    }
+
+    public void delete(Person... entities) {
+        Arrays.stream(entities)
+                .collect(Collectors.groupingBy(e -> shardForId(e.getId())))
+                .forEach((shard, shardEntities) -> shard.delete(shardEntities.toArray(Person[]::new)));
+    }
+
+    public List<Person> findAll() {
+        return shards.parallelStream()
+                .flatMap(shard -> shard.findAll().stream())
+                .toList();
+    }
+
+    public long count() {
+        return shards.parallelStream()
+                .mapToLong(PeopleRepository::count)
+                .sum();
+    }
+
+    public SalaryStats getSalaryStats() {
+        return shards.parallelStream()
+                .map(PeopleRepository::getSalaryStats)
+                .reduce(ShardedPeopleRepository::mergeSalaryStats)
+                .orElseThrow();
+    }
+
+    public List<GroupedSalaryStats> getSalaryStatsGroupedBy(StatsGrouping grouping) {
+        Map<String, SalaryStats> merged = shards.parallelStream()
+                .flatMap(shard -> shard.getSalaryStatsGroupedBy(grouping).stream())
+                .collect(Collectors.toMap(GroupedSalaryStats::group, GroupedSalaryStats::stats, ShardedPeopleRepository::mergeSalaryStats,
+                        () -> new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()))));
+        return merged.entrySet().stream()
+                .map(e -> new GroupedSalaryStats(e.getKey(), e.getValue()))
+                .toList();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int getShardIndex(Long id) {
+        int shard = (int) ((id - 1) / shardIdRange);
+        if (id < 1 || shard >= shards.size()) {
+            throw new IllegalArgumentException("ID %d does not belong to any of the %d shards".formatted(id, shards.size()));
+        }
+        return shard;
+    }
+
+    private PeopleRepository shardForId(Long id) {
+        return shards.get(getShardIndex(id));
+    }
+
+    private PeopleRepository shardFor(Person entity) {
+        Optional<Long> parentId = entity.getParent().map(Person::getId);
+        if (parentId.isPresent()) {
+            return shardForId(parentId.get());
+        }
+        int hash = Objects.hash(entity.getFirstName(), entity.getLastName(), entity.getEmail());
+        return shards.get(Math.floorMod(hash, shards.size()));
+    }
+
+    private static SalaryStats mergeSalaryStats(SalaryStats a, SalaryStats b) {
+        long count = a.count() + b.count();
+        BigDecimal total = a.total().add(b.total());
+        int scale = Math.max(scaleOf(a.average()), scaleOf(b.average()));
+        BigDecimal average = count == 0 ? null : total.divide(BigDecimal.valueOf(count), scale, RoundingMode.HALF_UP);
+        return new SalaryStats(count, total, average, pick(a.min(), b.min(), BigDecimal::min), pick(a.max(), b.max(), BigDecimal::max));
+    }
+
+    private static int scaleOf(BigDecimal value) {
+        return value == null ? 0 : value.scale();
+    }
+
+    private static BigDecimal pick(BigDecimal a, BigDecimal b, BinaryOperator<BigDecimal> chooser) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return chooser.apply(a, b);
+    }
+}
@@ -0,0 +1,76 @@
+package com.elenasuslova.peopledb.repository;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets the JDBC query timeout, which has whole-second granularity, and cancels the statement exactly at
+ * the deadline. Cancellation and {@link #finish()} exclude each other, so a statement is never cancelled
+ * after it has returned.
+ * <p>
+ * H2 ends a wait for a row lock neither on cancel() nor on the query timeout, only on the session's LOCK_TIMEOUT.
+ * For writes that setting is therefore lowered through the connection's {@link SessionLockTimeout} and put back
+ * by finish().
+ */
+class StatementCancellation {
+    private static final ScheduledExecutorService STATEMENT_CANCELLER = createStatementCanceller();
+
+    private final Statement statement;
+    private final ScheduledFuture<?> task;
+    private SessionLockTimeout lockTimeout;
+    private boolean finished;
+    private volatile boolean cancelled;
+
+    StatementCancellation(Statement statement, Deadline deadline, boolean waitsForLocks) throws SQLException {
+        this.statement = statement;
+        long remainingNanos = deadline.remainingNanos();
+        statement.setQueryTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos + 999_999_999)));
+        if (waitsForLocks) {
+            SessionLockTimeout sessionLockTimeout = SessionLockTimeout.of(statement.getConnection());
+            if (sessionLockTimeout.lower(statement.getConnection(), Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999_999)))) {
+                lockTimeout = sessionLockTimeout;
+            }
+        }
+        this.task = STATEMENT_CANCELLER.schedule(this::cancel, remainingNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void cancel() {
+        if (finished) return;
+        cancelled = true;
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    synchronized void finish() {
+        finished = true;
+        task.cancel(false);
+        if (lockTimeout != null) {
+            try {
+                lockTimeout.restore(statement.getConnection());
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static ScheduledExecutorService createStatementCanceller() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "statement-canceller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -0,0 +1,116 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.exception.QueryRejectedException;
+import com.elenasuslova.peopledb.exception.QueryTimeoutException;
+import com.elenasuslova.peopledb.model.CrudOperation;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The deadlines, concurrency limit and their counters of one {@link CrudRepository}. Every statement the repository
+ * runs goes through {@link #execute(CrudOperation, Statement, CrudRepository.StatementCall)}.
+ */
+class StatementLimiter {
+    private static final Set<CrudOperation> WRITE_OPERATIONS = EnumSet.of(CrudOperation.SAVE, CrudOperation.UPDATE,
+            CrudOperation.DELETE_ONE, CrudOperation.DELETE_MANY);
+
+    private final Map<CrudOperation, Duration> defaultTimeouts = Collections.synchronizedMap(new EnumMap<>(CrudOperation.class));
+    private final Map<CrudOperation, LongAdder> timeoutCounts = createCounters();
+    private final Map<CrudOperation, LongAdder> shedCounts = createCounters();
+    private volatile Semaphore concurrencyLimit;
+    private volatile long maxQueueWaitNanos;
+
+    void setDefaultTimeout(CrudOperation operationType, Duration timeout) {
+        if (timeout == null) {
+            defaultTimeouts.remove(operationType);
+        } else {
+            defaultTimeouts.put(operationType, timeout);
+        }
+    }
+
+    void limitConcurrency(Semaphore permits, Duration maxQueueWait) {
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.concurrencyLimit = permits;
+    }
+
+    long getTimeoutCount(CrudOperation operationType) {
+        return timeoutCounts.get(operationType).sum();
+    }
+
+    long getShedCount(CrudOperation operationType) {
+        return shedCounts.get(operationType).sum();
+    }
+
+    /**
+     * Runs call, which executes statement, within the concurrency limit and the operation's deadline.
+     * @throws QueryRejectedException if no permit became available in time
+     * @throws QueryTimeoutException if the deadline passed before or while the statement ran
+     */
+    <R> R execute(CrudOperation operationType, Statement statement, CrudRepository.StatementCall<R> call) throws SQLException {
+        Deadline deadline = getDeadline(operationType);
+        if (deadline != null && deadline.isExpired()) {
+            timeoutCounts.get(operationType).increment();
+            throw new QueryTimeoutException("Deadline passed before " + operationType + " started");
+        }
+        Semaphore permits = concurrencyLimit;
+        if (permits != null) {
+            acquirePermit(operationType, permits, deadline);
+        }
+        StatementCancellation cancellation = null;
+        try {
+            if (deadline != null) {
+                cancellation = new StatementCancellation(statement, deadline, WRITE_OPERATIONS.contains(operationType));
+            }
+            return call.execute();
+        } catch (SQLException e) {
+            if ((cancellation != null && cancellation.isCancelled()) || e instanceof SQLTimeoutException) {
+                timeoutCounts.get(operationType).increment();
+                throw new QueryTimeoutException(operationType + " did not finish before its deadline", e);
+            }
+            throw e;
+        } finally {
+            if (cancellation != null) {
+                cancellation.finish();
+            }
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private Deadline getDeadline(CrudOperation operationType) {
+        Deadline deadline = Deadline.current().orElse(null);
+        Duration timeout = defaultTimeouts.get(operationType);
+        return timeout == null ? deadline : Deadline.after(timeout).earliest(deadline);
+    }
+
+    private void acquirePermit(CrudOperation operationType, Semaphore permits, Deadline deadline) {
+        long waitNanos = deadline == null ? maxQueueWaitNanos : Math.min(maxQueueWaitNanos, deadline.remainingNanos());
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            shedCounts.get(operationType).increment();
+            throw new QueryRejectedException("Too many concurrent statements, rejected " + operationType);
+        }
+    }
+
+    private static Map<CrudOperation, LongAdder> createCounters() {
+        Map<CrudOperation, LongAdder> counters = new EnumMap<>(CrudOperation.class);
+        for (CrudOperation operationType : CrudOperation.values()) {
+            counters.put(operationType, new LongAdder());
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,191 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.model.Address;
+import com.elenasuslova.peopledb.model.Person;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Records new, changed and removed people and addresses, and writes them all in one transaction on {@link #commit()}.
+ * <p>
+ * Nothing is sent to the database before commit. The changes are then flushed in foreign key order with one JDBC batch
+ * per group: new addresses, new people level by level (parents before their children), changed addresses, changed
+ * people, removed people and removed addresses. Unsaved addresses of new people are saved along with them; a changed
+ * person is written like {@link CrudRepository#update}, which leaves their addresses alone.
+ * <p>
+ * {@link #savepoint()} and {@link #rollbackTo(Savepoint)} work on the recorded changes, as there are no statements
+ * to roll back before commit.
+ */
+public class UnitOfWork {
+    private final PeopleRepository peopleRepository;
+    private final AddressRepository addressRepository;
+    private final Connection connection;
+    private Changes changes = new Changes();
+
+    public UnitOfWork(PeopleRepository peopleRepository) {
+        this.peopleRepository = peopleRepository;
+        this.addressRepository = peopleRepository.addressRepository;
+        this.connection = peopleRepository.connection;
+    }
+
+    public void registerNew(Person person) {
+        changes.newPeople.add(person);
+    }
+
+    public void registerNew(Address address) {
+        changes.newAddresses.add(address);
+    }
+
+    public void registerDirty(Person person) {
+        if (!changes.newPeople.contains(person) && !changes.removedPeople.contains(person)) {
+            changes.dirtyPeople.add(person);
+        }
+    }
+
+    public void registerDirty(Address address) {
+        if (!changes.newAddresses.contains(address) && !changes.removedAddresses.contains(address)) {
+            changes.dirtyAddresses.add(address);
+        }
+    }
+
+    public void registerRemoved(Person person) {
+        if (changes.newPeople.remove(person)) return;
+        changes.dirtyPeople.remove(person);
+        changes.removedPeople.add(person);
+    }
+
+    public void registerRemoved(Address address) {
+        if (changes.newAddresses.remove(address)) return;
+        changes.dirtyAddresses.remove(address);
+        changes.removedAddresses.add(address);
+    }
+
+    public Savepoint savepoint() {
+        return new Savepoint(changes.copy());
+    }
+
+    /**
+     * Forgets everything registered after the savepoint was taken.
+     */
+    public void rollbackTo(Savepoint savepoint) {
+        changes = savepoint.changes.copy();
+    }
+
+    /**
+     * Forgets all registered changes.
+     */
+    public void rollback() {
+        changes = new Changes();
+    }
+
+    /**
+     * Writes all registered changes in a single transaction and forgets them. On failure the transaction is rolled back,
+     * the generated IDs and incremented versions are taken off the entities again and the changes stay registered,
+     * so commit can be retried.
+     */
+    public void commit() {
+        List<Runnable> undo = new ArrayList<>();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                flush(undo);
+                connection.commit();
+                changes = new Changes();
+            } catch (RuntimeException | SQLException e) {
+                connection.rollback();
+                undo.forEach(Runnable::run);
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param undo receives the actions that restore the IDs and versions of the entities this flush writes
+     */
+    private void flush(List<Runnable> undo) {
+        Set<Address> newAddresses = identitySet();
+        newAddresses.addAll(changes.newAddresses);
+        changes.newPeople.stream()
+                .flatMap(person -> Stream.of(person.getHomeAddress(), person.getBusinessAddress()))
+                .flatMap(Optional::stream)
+                .filter(address -> address.id() == null)
+                .forEach(newAddresses::add);
+        newAddresses.forEach(address -> undo.add(addressRepository.captureState(address)));
+        Stream.concat(changes.newPeople.stream(), changes.dirtyPeople.stream())
+                .forEach(person -> undo.add(peopleRepository.captureState(person)));
+        addressRepository.saveAll(new ArrayList<>(newAddresses));
+
+        getNewPeopleByLevel().forEach(peopleRepository::saveAll);
+
+        addressRepository.updateAll(new ArrayList<>(changes.dirtyAddresses));
+        peopleRepository.updateAll(new ArrayList<>(changes.dirtyPeople));
+
+        if (!changes.removedPeople.isEmpty()) {
+            peopleRepository.delete(changes.removedPeople.toArray(Person[]::new));
+        }
+        if (!changes.removedAddresses.isEmpty()) {
+            addressRepository.delete(changes.removedAddresses.toArray(Address[]::new));
+        }
+    }
+
+    /**
+     * Groups new people so that every new parent is saved in an earlier group than their new children.
+     */
+    private Collection<List<Person>> getNewPeopleByLevel() {
+        Map<Person, Integer> levels = new IdentityHashMap<>();
+        for (Person person : changes.newPeople) {
+            int level = 0;
+            Set<Person> visited = identitySet();
+            for (Person parent = person.getParent().orElse(null);
+                 parent != null && changes.newPeople.contains(parent) && visited.add(parent);
+                 parent = parent.getParent().orElse(null)) {
+                level++;
+            }
+            levels.put(person, level);
+        }
+        return changes.newPeople.stream()
+                .collect(Collectors.groupingBy(levels::get, TreeMap::new, Collectors.toList()))
+                .values();
+    }
+
+    private static <E> Set<E> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    public static class Savepoint {
+        private final Changes changes;
+
+        private Savepoint(Changes changes) {
+            this.changes = changes;
+        }
+    }
+
+    private static class Changes {
+        final Set<Person> newPeople = identitySet();
+        final Set<Person> dirtyPeople = identitySet();
+        final Set<Person> removedPeople = identitySet();
+        final Set<Address> newAddresses = identitySet();
+        final Set<Address> dirtyAddresses = identitySet();
+        final Set<Address> removedAddresses = identitySet();
+
+        Changes copy() {
+            Changes copy = new Changes();
+            copy.newPeople.addAll(newPeople);
+            copy.dirtyPeople.addAll(dirtyPeople);
+            copy.removedPeople.addAll(removedPeople);
+            copy.newAddresses.addAll(newAddresses);
+            copy.dirtyAddresses.addAll(dirtyAddresses);
+            copy.removedAddresses.addAll(removedAddresses);
+            return copy;
+        }
+    }
+}
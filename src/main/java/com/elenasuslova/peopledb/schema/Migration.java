@@ -0,0 +1,13 @@
+package com.elenasuslova.peopledb.schema;
+
+import java.util.List;
+
+/**
+ * One step of the schema history. Statements should be idempotent ("IF NOT EXISTS")
+ * so that databases created before the migrations existed can be brought up to date.
+ */
+public record Migration(int version, String description, List<String> statements) {
+    public Migration(int version, String description, String... statements) {
+        this(version, description, List.of(statements));
+    }
+}
@@ -0,0 +1,28 @@
+package com.elenasuslova.peopledb.schema;
+
+import com.elenasuslova.peopledb.model.CrudOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public record QueryPlan(String repository, CrudOperation operationType, String sql, String plan) {
+    private static final Pattern TABLE_SCAN = Pattern.compile("(\\w+)\\.tableScan");
+
+    public boolean isFullScan() {
+        return TABLE_SCAN.matcher(plan).find();
+    }
+
+    /**
+     * @return names of the tables the plan reads without an index, e.g. "PEOPLE"
+     */
+    public List<String> fullScanTables() {
+        List<String> tables = new ArrayList<>();
+        Matcher matcher = TABLE_SCAN.matcher(plan);
+        while (matcher.find()) {
+            tables.add(matcher.group(1));
+        }
+        return tables;
+    }
+}
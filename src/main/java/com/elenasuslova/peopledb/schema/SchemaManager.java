@@ -0,0 +1,179 @@
+package com.elenasuslova.peopledb.schema;
+
+import com.elenasuslova.peopledb.annotation.MultiSQL;
+import com.elenasuslova.peopledb.annotation.SQL;
+import com.elenasuslova.peopledb.model.CrudOperation;
+import com.elenasuslova.peopledb.repository.CrudRepository;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Creates the PEOPLE and ADDRESSES tables and keeps them at the latest schema version.
+ * Applied versions are recorded in SCHEMA_VERSION.
+ */
+public class SchemaManager {
+    public static final String CREATE_SCHEMA_VERSION_SQL = """
+            CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (
+            VERSION INT PRIMARY KEY,
+            DESCRIPTION VARCHAR(255),
+            APPLIED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP)
+            """;
+    public static final String SELECT_VERSION_SQL = "SELECT COALESCE(MAX(VERSION), 0) FROM SCHEMA_VERSION";
+    public static final String INSERT_VERSION_SQL = "INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPTION) VALUES(?, ?)";
+
+    public static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create PEOPLE and ADDRESSES", """
+                    CREATE TABLE IF NOT EXISTS ADDRESSES (
+                    ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    STREET_ADDRESS VARCHAR(255),
+                    ADDRESS2 VARCHAR(255),
+                    CITY VARCHAR(255),
+                    STATE VARCHAR(255),
+                    POSTCODE VARCHAR(255),
+                    COUNTY VARCHAR(255),
+                    REGION VARCHAR(255),
+                    COUNTRY VARCHAR(255))
+                    """, """
+                    CREATE TABLE IF NOT EXISTS PEOPLE (
+                    ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    FIRST_NAME VARCHAR(255),
+                    LAST_NAME VARCHAR(255),
+                    DOB TIMESTAMP(9),
+                    SALARY DECIMAL(15, 2) DEFAULT 0,
+                    EMAIL VARCHAR(255),
+                    HOME_ADDRESS BIGINT,
+                    BIZ_ADDRESS BIGINT,
+                    PARENT_ID BIGINT)
+                    """),
+            new Migration(2, "Foreign keys for addresses and parent",
+                    "ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS FK_PEOPLE_HOME_ADDRESS FOREIGN KEY (HOME_ADDRESS) REFERENCES ADDRESSES(ID) ON DELETE SET NULL",
+                    "ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS FK_PEOPLE_BIZ_ADDRESS FOREIGN KEY (BIZ_ADDRESS) REFERENCES ADDRESSES(ID) ON DELETE SET NULL",
+                    "ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS FK_PEOPLE_PARENT FOREIGN KEY (PARENT_ID) REFERENCES PEOPLE(ID) ON DELETE SET NULL"),
+            new Migration(3, "Indexes for join and lookup paths",
+                    "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_PARENT_ID ON PEOPLE(PARENT_ID)",
+                    "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_HOME_ADDRESS ON PEOPLE(HOME_ADDRESS)",
+                    "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_BIZ_ADDRESS ON PEOPLE(BIZ_ADDRESS)",
+                    "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_EMAIL ON PEOPLE(EMAIL)",
+                    "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_SALARY ON PEOPLE(SALARY)"),
+            new Migration(4, "Version column for optimistic locking",
+                    "ALTER TABLE PEOPLE ADD COLUMN IF NOT EXISTS VERSION BIGINT DEFAULT 0 NOT NULL"),
+            new Migration(5, "Nanosecond precision for DOB",
+                    "ALTER TABLE PEOPLE ALTER COLUMN DOB SET DATA TYPE TIMESTAMP(9)")
+    );
+
+    private final Connection connection;
+
+    public SchemaManager(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Applies every migration newer than the recorded schema version, each in its own transaction.
+     * @return the schema version after migrating
+     */
+    public int migrate() {
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                connection.createStatement().execute(CREATE_SCHEMA_VERSION_SQL);
+                int currentVersion = getCurrentVersion();
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version() > currentVersion) {
+                        apply(migration);
+                        currentVersion = migration.version();
+                    }
+                }
+                return currentVersion;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to migrate schema", e);
+        }
+    }
+
+    public int getCurrentVersion() throws SQLException {
+        ResultSet rs = connection.createStatement().executeQuery(SELECT_VERSION_SQL);
+        rs.next();
+        return rs.getInt(1);
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        try {
+            Statement st = connection.createStatement();
+            for (String sql : migration.statements()) {
+                st.execute(sql);
+            }
+            PreparedStatement ps = connection.prepareStatement(INSERT_VERSION_SQL);
+            ps.setInt(1, migration.version());
+            ps.setString(2, migration.description());
+            ps.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs EXPLAIN for every {@link SQL} query declared on the given repositories.
+     * INSERT statements are skipped as they never scan.
+     * @return one plan per query; use {@link QueryPlan#isFullScan()} to find the ones missing an index
+     */
+    public List<QueryPlan> checkIndexCoverage(CrudRepository<?>... repositories) {
+        List<QueryPlan> plans = new ArrayList<>();
+        for (CrudRepository<?> repository : repositories) {
+            for (SQL sql : getDeclaredSql(repository.getClass())) {
+                if (sql.operationType() == CrudOperation.SAVE) continue;
+                plans.add(new QueryPlan(repository.getClass().getSimpleName(), sql.operationType(), sql.value(), explain(sql.value())));
+            }
+        }
+        return plans;
+    }
+
+    private String explain(String sql) {
+        try {
+            PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql.replace(":ids", "0"));
+            ParameterMetaData parameters = ps.getParameterMetaData();
+            for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                ps.setObject(i, getSampleValue(parameters.getParameterType(i)));
+            }
+            ResultSet rs = ps.executeQuery();
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                plan.append(rs.getString(1));
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to explain: " + sql, e);
+        }
+    }
+
+    private static Object getSampleValue(int sqlType) {
+        return switch (sqlType) {
+            case Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.TINYINT -> 0L;
+            case Types.DECIMAL, Types.NUMERIC, Types.DOUBLE, Types.FLOAT, Types.REAL -> BigDecimal.ZERO;
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE, Types.DATE -> new Timestamp(0);
+            default -> "";
+        };
+    }
+
+    private static List<SQL> getDeclaredSql(Class<?> repositoryClass) {
+        Stream<SQL> multiSqlStream = Arrays.stream(repositoryClass.getDeclaredMethods())
+                .filter(m -> m.isAnnotationPresent(MultiSQL.class))
+                .map(m -> m.getAnnotation(MultiSQL.class))
+                .flatMap(msql -> Arrays.stream(msql.value()));
+
+        Stream<SQL> sqlStream = Arrays.stream(repositoryClass.getDeclaredMethods())
+                .filter(m -> m.isAnnotationPresent(SQL.class))
+                .map(m -> m.getAnnotation(SQL.class));
+
+        return Stream.concat(multiSqlStream, sqlStream).toList();
+    }
+}
@@ -0,0 +1,289 @@
+package com.elenasuslova.peopledb.search;
+
+import com.elenasuslova.peopledb.event.ChangeEvent;
+import com.elenasuslova.peopledb.event.ChangeFeed;
+import com.elenasuslova.peopledb.event.ChangeSubscription;
+import com.elenasuslova.peopledb.model.CrudOperation;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.repository.PeopleRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds people by FIRST_NAME, LAST_NAME or EMAIL without touching the database.
+ * <p>
+ * The lower-cased values are kept in a trie whose nodes hold the IDs of the people with that exact value, so a prefix
+ * lookup walks the prefix and collects the subtree below it, and a fuzzy lookup walks the trie computing one
+ * Levenshtein row per node, skipping any branch whose row is already over the allowed distance.
+ * <p>
+ * {@link #build(ChangeFeed)} fills the index from a streaming scan of the table and then keeps it current from the
+ * feed: the people named by each batch of committed events are read again with one query. Events that arrive during
+ * the scan are applied once it has finished. Lookups return IDs; {@link #hydrate(List)} loads the people in bulk.
+ */
+public class PeopleSearchIndex implements AutoCloseable {
+    public static final String SUBSCRIPTION_NAME = "people-search-index";
+
+    private final PeopleRepository repository;
+    private final DataSource dataSource;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private final Map<Long, List<String>> termsById = new HashMap<>();
+    private final List<ChangeEvent> pendingEvents = new ArrayList<>();
+    private boolean built;
+    private ChangeSubscription subscription;
+
+    /**
+     * @param repository used to hydrate search results
+     * @param dataSource used for the initial scan and to re-read changed people; should be a pool
+     */
+    public PeopleSearchIndex(PeopleRepository repository, DataSource dataSource) {
+        this.repository = repository;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Indexes the whole table. The index will not see later writes.
+     */
+    public PeopleSearchIndex build() {
+        return build(null);
+    }
+
+    /**
+     * Subscribes to the feed, indexes the whole table and then applies the changes committed in the meantime.
+     * @param changeFeed the feed the repositories writing to PEOPLE publish to, may be null
+     */
+    public PeopleSearchIndex build(ChangeFeed changeFeed) {
+        if (changeFeed != null) {
+            subscription = changeFeed.subscribe(SUBSCRIPTION_NAME, this::onChanges);
+        }
+        StreamSupport.stream(repository.spliterator(dataSource), false).forEach(this::index);
+        List<ChangeEvent> events;
+        synchronized (pendingEvents) {
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            built = true;
+        }
+        apply(events);
+        return this;
+    }
+
+    /**
+     * @return IDs of people with a first name, last name or e-mail starting with prefix, ignoring case,
+     * ordered by the matching value
+     */
+    public List<Long> findByPrefix(String prefix, int limit) {
+        String term = normalize(prefix);
+        if (term == null || limit <= 0) return List.of();
+        Set<Long> ids = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < term.length() && node != null; i++) {
+                node = node.children.get(term.charAt(i));
+            }
+            if (node != null) {
+                collect(node, ids, limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return List.copyOf(ids);
+    }
+
+    /**
+     * @param maxEdits the maximum number of inserted, deleted or replaced characters
+     * @return IDs of people with a first name, last name or e-mail within maxEdits of term, ignoring case,
+     * closest matches first
+     */
+    public List<Long> findSimilar(String term, int maxEdits, int limit) {
+        String query = normalize(term);
+        if (query == null || limit <= 0) return List.of();
+        Map<Long, Integer> distances = new HashMap<>();
+        int[] firstRow = new int[query.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+        lock.readLock().lock();
+        try {
+            if (query.length() <= maxEdits) {
+                addMatches(root, query.length(), distances);
+            }
+            root.children.forEach((c, child) -> findSimilar(child, c, query, firstRow, maxEdits, distances));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return distances.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Loads the people with the given IDs in a single query, in the order of ids.
+     */
+    public List<Person> hydrate(List<Long> ids) {
+        Map<Long, Person> people = new HashMap<>();
+        repository.findAllById(ids).forEach(person -> people.put(person.getId(), person));
+        return ids.stream()
+                .map(people::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return termsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    private void onChanges(List<ChangeEvent> events) {
+        synchronized (pendingEvents) {
+            if (!built) {
+                pendingEvents.addAll(events);
+                return;
+            }
+        }
+        apply(events);
+    }
+
+    private void apply(List<ChangeEvent> events) {
+        Set<Long> changedIds = new LinkedHashSet<>();
+        Set<Long> deletedIds = new HashSet<>();
+        for (ChangeEvent event : events) {
+            if (event.entityType() != Person.class) continue;
+            if (event.operationType() == CrudOperation.DELETE_ONE || event.operationType() == CrudOperation.DELETE_MANY) {
+                deletedIds.add(event.id());
+                changedIds.remove(event.id());
+            } else {
+                changedIds.add(event.id());
+                deletedIds.remove(event.id());
+            }
+        }
+        deletedIds.forEach(this::remove);
+        if (changedIds.isEmpty()) return;
+        try (Connection readConnection = dataSource.getConnection()) {
+            List<Person> people = new PeopleRepository(readConnection).findAllById(changedIds);
+            people.forEach(this::index);
+            // a person saved and deleted again before we read it is gone
+            people.forEach(person -> changedIds.remove(person.getId()));
+            changedIds.forEach(this::remove);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void index(Person person) {
+        List<String> terms = Stream.of(person.getFirstName(), person.getLastName(), person.getEmail())
+                .map(PeopleSearchIndex::normalize)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        lock.writeLock().lock();
+        try {
+            removeTerms(person.getId());
+            for (String term : terms) {
+                Node node = root;
+                for (int i = 0; i < term.length(); i++) {
+                    node = node.children.computeIfAbsent(term.charAt(i), c -> new Node());
+                }
+                node.ids.add(person.getId());
+            }
+            termsById.put(person.getId(), terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeTerms(Long id) {
+        List<String> terms = termsById.remove(id);
+        if (terms == null) return;
+        for (String term : terms) {
+            removeTerm(root, term, 0, id);
+        }
+    }
+
+    /**
+     * @return true if node no longer holds any IDs or children and can be dropped by its parent
+     */
+    private static boolean removeTerm(Node node, String term, int depth, Long id) {
+        if (depth == term.length()) {
+            node.ids.remove(id);
+        } else {
+            Node child = node.children.get(term.charAt(depth));
+            if (child != null && removeTerm(child, term, depth + 1, id)) {
+                node.children.remove(term.charAt(depth));
+            }
+        }
+        return node.ids.isEmpty() && node.children.isEmpty();
+    }
+
+    private static void collect(Node node, Set<Long> ids, int limit) {
+        for (Long id : node.ids) {
+            if (ids.size() >= limit) return;
+            ids.add(id);
+        }
+        for (Node child : node.children.values()) {
+            if (ids.size() >= limit) return;
+            collect(child, ids, limit);
+        }
+    }
+
+    private static void findSimilar(Node node, char c, String query, int[] previousRow, int maxEdits, Map<Long, Integer> distances) {
+        int[] row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        int minDistance = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int replaceCost = query.charAt(i - 1) == c ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), previousRow[i - 1] + replaceCost);
+            minDistance = Math.min(minDistance, row[i]);
+        }
+        if (row[row.length - 1] <= maxEdits) {
+            addMatches(node, row[row.length - 1], distances);
+        }
+        if (minDistance <= maxEdits) {
+            node.children.forEach((next, child) -> findSimilar(child, next, query, row, maxEdits, distances));
+        }
+    }
+
+    private static void addMatches(Node node, int distance, Map<Long, Integer> distances) {
+        node.ids.forEach(id -> distances.merge(id, distance, Math::min));
+    }
+
+    private static String normalize(String value) {
+        if (value == null) return null;
+        String term = value.trim().toLowerCase(Locale.ROOT);
+        return term.isEmpty() ? null : term;
+    }
+
+    private static class Node {
+        final SortedMap<Character, Node> children = new TreeMap<>();
+        final Set<Long> ids = new TreeSet<>();
+    }
+}
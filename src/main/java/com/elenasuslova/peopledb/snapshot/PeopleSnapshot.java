@@ -0,0 +1,447 @@
+package com.elenasuslova.peopledb.snapshot;
+
+import com.elenasuslova.peopledb.model.Address;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.Region;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only, memory-mapped copy of Person records as returned by PeopleRepository.findById,
+ * including their addresses and direct children.
+ * <p>
+ * File layout: a header (magic, format version, creation time, record count, child count), an index of
+ * (ID, record offset, VERSION, row hash, children hash) entries sorted by ID, an index of (child ID, parent ID)
+ * entries sorted by child ID, and the records themselves.
+ * Lookups binary-search the mapped indexes, so nothing but the invalidated IDs is kept on the heap.
+ * <p>
+ * The versions and hashes let {@link #verify(Connection)} find records that changed in the database after
+ * the snapshot was written; those, and any IDs passed to {@link #invalidate(long)} along with the records that
+ * embed them as a child, are no longer served.
+ */
+public class PeopleSnapshot {
+    public static final int MAGIC = 0x50534E50;
+    public static final int FORMAT_VERSION = 5;
+    public static final String VERIFY_SQL = """
+            SELECT
+            PERSON.ID, PERSON.FIRST_NAME, PERSON.LAST_NAME, PERSON.DOB, PERSON.SALARY, PERSON.EMAIL, PERSON.PARENT_ID,
+            HOME.ID, HOME.STREET_ADDRESS, HOME.ADDRESS2, HOME.CITY, HOME.STATE, HOME.POSTCODE, HOME.COUNTRY, HOME.COUNTY, HOME.REGION,
+            BIZ.ID, BIZ.STREET_ADDRESS, BIZ.ADDRESS2, BIZ.CITY, BIZ.STATE, BIZ.POSTCODE, BIZ.COUNTRY, BIZ.COUNTY, BIZ.REGION,
+            PERSON.VERSION
+            FROM PEOPLE AS PERSON
+            LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            LEFT OUTER JOIN ADDRESSES AS BIZ ON PERSON.BIZ_ADDRESS = BIZ.ID
+            WHERE PERSON.ID IN (:ids) OR PERSON.PARENT_ID IN (:ids)
+            """;
+    public static final int VERIFY_CHUNK_SIZE = 500;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int PARENT_ENTRY_SIZE = Long.BYTES + Long.BYTES;
+    private static final ZoneId UTC = ZoneId.of("+0");
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int childCount;
+    private final Instant createdAt;
+    private final Set<Long> invalidatedIds = ConcurrentHashMap.newKeySet();
+
+    private PeopleSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            throw new IOException("Not a people snapshot file");
+        }
+        this.createdAt = Instant.ofEpochMilli(buffer.getLong(2 * Integer.BYTES));
+        this.count = buffer.getInt(2 * Integer.BYTES + Long.BYTES);
+        this.childCount = buffer.getInt(3 * Integer.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Writes the given people to file, replacing it atomically.
+     */
+    public static void write(Path file, Collection<Person> people) throws IOException {
+        List<Person> sorted = people.stream()
+                .filter(p -> p.getId() != null)
+                .sorted(Comparator.comparing(Person::getId))
+                .toList();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        long[] offsets = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            offsets[i] = records.size();
+            writePerson(sorted.get(i), recordsOut);
+        }
+        SortedMap<Long, Long> parentIds = new TreeMap<>();
+        for (Person person : sorted) {
+            for (Person child : person.getChildren()) {
+                parentIds.put(child.getId(), person.getId());
+            }
+        }
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(sorted.size());
+            out.writeInt(parentIds.size());
+            long dataStart = HEADER_SIZE + (long) sorted.size() * INDEX_ENTRY_SIZE + (long) parentIds.size() * PARENT_ENTRY_SIZE;
+            for (int i = 0; i < sorted.size(); i++) {
+                Person person = sorted.get(i);
+                out.writeLong(person.getId());
+                out.writeLong(dataStart + offsets[i]);
+                out.writeLong(versionOf(person));
+                out.writeInt(rowHash(person));
+                out.writeLong(childrenHash(person.getChildren()));
+            }
+            for (Map.Entry<Long, Long> entry : parentIds.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            records.writeTo(out);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Registers a JVM shutdown hook that writes whatever the supplier returns at that time.
+     */
+    public static void writeOnShutdown(Path file, Supplier<Collection<Person>> hotSet) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                write(file, hotSet.get());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+    }
+
+    public static PeopleSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return new PeopleSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Optional<Person> find(long id) {
+        if (invalidatedIds.contains(id)) return Optional.empty();
+        int idx = indexOf(id);
+        if (idx < 0) return Optional.empty();
+        ByteBuffer record = buffer.duplicate();
+        record.position((int) buffer.getLong(indexEntry(idx) + Long.BYTES));
+        return Optional.of(readPerson(record));
+    }
+
+    /**
+     * Stops serving the record for id and, if id is embedded as a child in another record, that record too.
+     */
+    public void invalidate(long id) {
+        invalidatedIds.add(id);
+        int parentIdx = parentIndexOf(id);
+        if (parentIdx >= 0) {
+            invalidatedIds.add(buffer.getLong(parentEntry(parentIdx) + Long.BYTES));
+        }
+    }
+
+    public boolean contains(long id) {
+        return !invalidatedIds.contains(id) && indexOf(id) >= 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Compares every record with the database and invalidates those whose person, addresses or children no longer
+     * match, including people that were deleted. The records are checked VERIFY_CHUNK_SIZE at a time, each chunk
+     * reading only the people with those IDs and their children.
+     * @return the number of records invalidated by this call
+     */
+    public int verify(Connection connection) throws SQLException {
+        Set<Long> changed = new HashSet<>();
+        try (Statement st = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            for (int from = 0; from < count; from += VERIFY_CHUNK_SIZE) {
+                verify(st, from, Math.min(from + VERIFY_CHUNK_SIZE, count), changed);
+            }
+        }
+        changed.removeAll(invalidatedIds);
+        invalidatedIds.addAll(changed);
+        return changed.size();
+    }
+
+    /**
+     * Adds the IDs of the records at index positions from (inclusive) to to (exclusive) that changed to changed.
+     */
+    private void verify(Statement st, int from, int to, Set<Long> changed) throws SQLException {
+        StringJoiner ids = new StringJoiner(",");
+        for (int idx = from; idx < to; idx++) {
+            ids.add(String.valueOf(buffer.getLong(indexEntry(idx))));
+        }
+        long[] actualChildrenHashes = new long[to - from];
+        BitSet seen = new BitSet(to - from);
+        ResultSet rs = st.executeQuery(VERIFY_SQL.replace(":ids", ids.toString()));
+        while (rs.next()) {
+            long id = rs.getLong(1);
+            long parentId = rs.getLong(7);
+            if (!rs.wasNull()) {
+                int parentIdx = indexOf(parentId);
+                if (parentIdx >= from && parentIdx < to) {
+                    actualChildrenHashes[parentIdx - from] += childHash(id, rs.getLong(26), rs.getString(2), rs.getString(3), toInstant(rs.getTimestamp(4)),
+                            rs.getBigDecimal(5), rs.getString(6));
+                }
+            }
+            int idx = indexOf(id);
+            if (idx >= from && idx < to) {
+                seen.set(idx - from);
+                int actualRowHash = hash(id, rs.getString(2), rs.getString(3), toInstant(rs.getTimestamp(4)), normalize(rs.getBigDecimal(5)), rs.getString(6),
+                        rs.getObject(8), rs.getString(9), rs.getString(10), rs.getString(11), rs.getString(12), rs.getString(13), rs.getString(14), rs.getString(15), upperCase(rs.getString(16)),
+                        rs.getObject(17), rs.getString(18), rs.getString(19), rs.getString(20), rs.getString(21), rs.getString(22), rs.getString(23), rs.getString(24), upperCase(rs.getString(25)));
+                if (rs.getLong(26) != buffer.getLong(indexEntry(idx) + 2 * Long.BYTES)
+                        || actualRowHash != buffer.getInt(indexEntry(idx) + 3 * Long.BYTES)) {
+                    changed.add(id);
+                }
+            }
+        }
+        for (int idx = from; idx < to; idx++) {
+            long expectedChildrenHash = buffer.getLong(indexEntry(idx) + 3 * Long.BYTES + Integer.BYTES);
+            if (!seen.get(idx - from) || actualChildrenHashes[idx - from] != expectedChildrenHash) {
+                changed.add(buffer.getLong(indexEntry(idx)));
+            }
+        }
+    }
+
+    private int indexOf(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = buffer.getLong(indexEntry(mid));
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int parentIndexOf(long childId) {
+        int low = 0;
+        int high = childCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = buffer.getLong(parentEntry(mid));
+            if (midId < childId) {
+                low = mid + 1;
+            } else if (midId > childId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexEntry(int idx) {
+        return HEADER_SIZE + idx * INDEX_ENTRY_SIZE;
+    }
+
+    private int parentEntry(int idx) {
+        return HEADER_SIZE + count * INDEX_ENTRY_SIZE + idx * PARENT_ENTRY_SIZE;
+    }
+
+    private static int rowHash(Person person) {
+        Object[] home = addressValues(person.getHomeAddress());
+        Object[] biz = addressValues(person.getBusinessAddress());
+        Object[] values = new Object[6 + home.length + biz.length];
+        values[0] = person.getId();
+        values[1] = person.getFirstName();
+        values[2] = person.getLastName();
+        values[3] = toInstant(person.getDob());
+        values[4] = normalize(person.getSalary());
+        values[5] = person.getEmail();
+        System.arraycopy(home, 0, values, 6, home.length);
+        System.arraycopy(biz, 0, values, 6 + home.length, biz.length);
+        return hash(values);
+    }
+
+    private static Object[] addressValues(Optional<Address> address) {
+        return address.map(a -> new Object[]{a.id(), a.streetAddress(), a.address2(), a.city(), a.state(), a.postcode(), a.country(), a.county(),
+                        a.region() == null ? null : a.region().name()})
+                .orElse(new Object[9]);
+    }
+
+    private static long childrenHash(Set<Person> children) {
+        return children.stream()
+                .mapToLong(c -> childHash(c.getId(), versionOf(c), c.getFirstName(), c.getLastName(), toInstant(c.getDob()), c.getSalary(), c.getEmail()))
+                .sum();
+    }
+
+    private static long childHash(long id, long version, String firstName, String lastName, Instant dob, BigDecimal salary, String email) {
+        return hash(id, version, firstName, lastName, dob, normalize(salary), email);
+    }
+
+    private static long versionOf(Person person) {
+        return person.getVersion() == null ? 0 : person.getVersion();
+    }
+
+    private static int hash(Object... values) {
+        CRC32 crc = new CRC32();
+        for (Object value : values) {
+            crc.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            crc.update(0);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static String normalize(BigDecimal value) {
+        return value == null ? null : value.stripTrailingZeros().toPlainString();
+    }
+
+    private static String upperCase(String value) {
+        return value == null ? null : value.toUpperCase();
+    }
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime().toInstant(ZoneOffset.UTC);
+    }
+
+    private static Instant toInstant(ZonedDateTime dateTime) {
+        return dateTime == null ? null : dateTime.toInstant();
+    }
+
+    private static void writePerson(Person person, DataOutputStream out) throws IOException {
+        writePersonFields(person, out);
+        writeAddress(person.getHomeAddress(), out);
+        writeAddress(person.getBusinessAddress(), out);
+        out.writeInt(person.getChildren().size());
+        for (Person child : person.getChildren()) {
+            writePersonFields(child, out);
+        }
+    }
+
+    private static void writePersonFields(Person person, DataOutputStream out) throws IOException {
+        out.writeLong(person.getId());
+        out.writeLong(versionOf(person));
+        writeString(person.getFirstName(), out);
+        writeString(person.getLastName(), out);
+        writeString(person.getEmail(), out);
+        Instant dob = person.getDob().toInstant();
+        out.writeLong(dob.getEpochSecond());
+        out.writeInt(dob.getNano());
+        BigDecimal salary = person.getSalary();
+        if (salary == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] unscaled = salary.unscaledValue().toByteArray();
+            out.writeInt(unscaled.length);
+            out.write(unscaled);
+            out.writeInt(salary.scale());
+        }
+    }
+
+    private static void writeAddress(Optional<Address> address, DataOutputStream out) throws IOException {
+        out.writeBoolean(address.isPresent());
+        if (address.isEmpty()) return;
+        Address a = address.get();
+        out.writeLong(a.id());
+        writeString(a.streetAddress(), out);
+        writeString(a.address2(), out);
+        writeString(a.city(), out);
+        writeString(a.state(), out);
+        writeString(a.postcode(), out);
+        writeString(a.country(), out);
+        writeString(a.county(), out);
+        writeString(a.region() == null ? null : a.region().name(), out);
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static Person readPerson(ByteBuffer in) {
+        Person person = readPersonFields(in);
+        person.setHomeAddress(readAddress(in));
+        person.setBusinessAddress(readAddress(in));
+        int childCount = in.getInt();
+        for (int i = 0; i < childCount; i++) {
+            person.addChild(readPersonFields(in));
+        }
+        return person;
+    }
+
+    private static Person readPersonFields(ByteBuffer in) {
+        long id = in.getLong();
+        long version = in.getLong();
+        String firstName = readString(in);
+        String lastName = readString(in);
+        String email = readString(in);
+        ZonedDateTime dob = ZonedDateTime.ofInstant(Instant.ofEpochSecond(in.getLong(), in.getInt()), UTC);
+        BigDecimal salary = null;
+        int salaryLength = in.getInt();
+        if (salaryLength >= 0) {
+            byte[] unscaled = new byte[salaryLength];
+            in.get(unscaled);
+            salary = new BigDecimal(new BigInteger(unscaled), in.getInt());
+        }
+        Person person = new Person(id, firstName, lastName, dob, salary);
+        person.setEmail(email);
+        person.setVersion(version);
+        return person;
+    }
+
+    private static Address readAddress(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        long id = in.getLong();
+        String streetAddress = readString(in);
+        String address2 = readString(in);
+        String city = readString(in);
+        String state = readString(in);
+        String postcode = readString(in);
+        String country = readString(in);
+        String county = readString(in);
+        String region = readString(in);
+        return new Address(id, streetAddress, address2, city, state, postcode, country, county, region == null ? null : Region.valueOf(region));
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+package com.elenasuslova.peopledb.event;
+
+import com.elenasuslova.peopledb.model.Address;
+import com.elenasuslova.peopledb.model.CrudOperation;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.Region;
+import com.elenasuslova.peopledb.repository.PeopleRepository;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChangeFeedTests {
+    private Connection connection;
+    private ChangeFeed feed;
+    private PeopleRepository repo;
+    private final List<ChangeEvent> received = new CopyOnWriteArrayList<>();
+    private ChangeSubscription subscription;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        feed = new ChangeFeed();
+        connection = feed.wrap(DriverManager.getConnection("jdbc:h2:mem:feedtest"));
+        new SchemaManager(connection).migrate();
+        connection.setAutoCommit(false);
+        repo = new PeopleRepository(connection);
+        repo.publishChangesTo(feed);
+        subscription = feed.subscribe("test", received::addAll);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        subscription.close();
+        connection.close();
+    }
+
+    private void awaitEvents(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && received.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void salaryStatsForgetRolledBackWrites() throws SQLException {
+        long startCount = repo.getSalaryStats().count();
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        assertThat(repo.getSalaryStats().count()).isEqualTo(startCount + 1);
+
+        connection.rollback();
+        assertThat(repo.getSalaryStats().count()).isEqualTo(startCount);
+    }
+
+    @Test
+    public void publishesOnlyAfterCommit() throws SQLException, InterruptedException {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        awaitEvents(1);
+        assertThat(received).isEmpty();
+
+        connection.commit();
+        awaitEvents(1);
+        assertThat(received).containsExactly(new ChangeEvent(Person.class, john.getId(), CrudOperation.SAVE,
+                Set.of("FIRST_NAME", "LAST_NAME", "DOB", "SALARY", "EMAIL", "HOME_ADDRESS", "BIZ_ADDRESS", "PARENT_ID")));
+    }
+
+    @Test
+    public void dropsEventsOnRollback() throws SQLException, InterruptedException {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        connection.rollback();
+        connection.commit();
+        awaitEvents(1);
+        assertThat(received).isEmpty();
+    }
+
+    @Test
+    public void reportsUpdatedColumns() throws SQLException, InterruptedException {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        john.setSalary(new BigDecimal("1000.00"));
+        repo.update(john);
+        repo.delete(john);
+        connection.commit();
+        awaitEvents(3);
+
+        assertThat(received).extracting(ChangeEvent::operationType)
+                .containsExactly(CrudOperation.SAVE, CrudOperation.UPDATE, CrudOperation.DELETE_ONE);
+        assertThat(received.get(1).changedColumns()).containsExactlyInAnyOrder("FIRST_NAME", "LAST_NAME", "DOB", "SALARY", "VERSION");
+    }
+
+    @Test
+    public void reportsPeopleWhoseAddressWasDeleted() throws SQLException, InterruptedException {
+        Address address = new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(address);
+        repo.save(john);
+        repo.addressRepository.delete(address);
+        connection.commit();
+        awaitEvents(4);
+
+        assertThat(received).contains(new ChangeEvent(Address.class, address.id(), CrudOperation.DELETE_ONE, Set.of()),
+                new ChangeEvent(Person.class, john.getId(), CrudOperation.UPDATE, Set.of("HOME_ADDRESS", "BIZ_ADDRESS")));
+    }
+
+    @Test
+    public void producerWaitsForSlowSubscriber() throws InterruptedException {
+        ChangeFeed smallFeed = new ChangeFeed(4);
+        List<ChangeEvent> slowlyReceived = new CopyOnWriteArrayList<>();
+        try (ChangeSubscription slowSubscription = smallFeed.subscribe("slow", events -> {
+            slowlyReceived.addAll(events);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1)) {
+            List<ChangeEvent> events = new ArrayList<>();
+            for (long id = 1; id <= 50; id++) {
+                events.add(new ChangeEvent(Person.class, id, CrudOperation.SAVE, Set.of()));
+            }
+            smallFeed.publish(events);
+            for (int i = 0; i < 100 && slowlyReceived.size() < events.size(); i++) {
+                Thread.sleep(10);
+            }
+
+            assertThat(slowlyReceived).containsExactlyElementsOf(events);
+            assertThat(slowSubscription.getLag()).isZero();
+        }
+    }
+}
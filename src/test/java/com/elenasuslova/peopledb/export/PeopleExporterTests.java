@@ -0,0 +1,129 @@
+package com.elenasuslova.peopledb.export;
+
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.repository.PeopleRepository;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleExporterTests {
+    private Connection connection;
+    private PeopleExporter exporter;
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:exporttest;DB_CLOSE_DELAY=-1");
+        connection = dataSource.getConnection();
+        new SchemaManager(connection).migrate();
+        PeopleRepository repo = new PeopleRepository(connection);
+        for (int i = 0; i < 10; i++) {
+            Person person = new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+            person.setSalary(new BigDecimal("1000.50"));
+            person.setEmail("john" + i + "@smith.com");
+            repo.save(person);
+        }
+        exporter = new PeopleExporter(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.createStatement().execute("DROP ALL OBJECTS");
+            connection.close();
+        }
+    }
+
+    @Test
+    public void canExportCsvInImportLayout() throws IOException {
+        Path file = tempDir.resolve("people.csv");
+        long count = exporter.export(file, ExportFormat.CSV);
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(count).isEqualTo(10);
+        assertThat(lines).hasSize(11);
+        String[] columns = lines.get(1).split(",");
+        assertThat(columns[2]).isEqualTo("John0");
+        assertThat(columns[4]).isEqualTo("Smith");
+        assertThat(columns[6]).isEqualTo("john0@smith.com");
+        assertThat(columns[10]).isEqualTo("11/15/1980");
+        assertThat(columns[11]).isEqualTo("03:15:00 PM");
+        assertThat(columns[25]).isEqualTo("1000.50");
+    }
+
+    @Test
+    public void canExportJsonLines() throws IOException {
+        Path file = tempDir.resolve("people.jsonl");
+        exporter.export(file, ExportFormat.JSON_LINES);
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(10);
+        assertThat(lines.get(0)).contains("\"firstName\":\"John0\"", "\"salary\":1000.50", "\"dob\":\"1980-11-15T15:15Z\"");
+    }
+
+    @Test
+    public void canExportBinary() throws IOException {
+        Path file = tempDir.resolve("people.bin");
+        exporter.export(file, ExportFormat.BINARY);
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            assertThat(in.readInt()).isEqualTo(PeopleExporter.BINARY_MAGIC);
+            int records = 0;
+            while (in.available() > 0) {
+                int length = in.readInt();
+                in.skipNBytes(length);
+                records++;
+            }
+            assertThat(records).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void binaryKeepsDobToTheNanosecond() throws IOException, SQLException {
+        connection.createStatement().executeUpdate("UPDATE PEOPLE SET DOB = DATEADD(NANOSECOND, 123456789, DOB) WHERE FIRST_NAME = 'John0'");
+        Path file = tempDir.resolve("people.bin");
+        exporter.export(file, ExportFormat.BINARY);
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            in.readInt();
+            in.readInt();
+            in.readLong();
+            for (int i = 0; i < 3; i++) {
+                in.skipNBytes(in.readInt());
+            }
+            Instant dob = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            assertThat(dob).isEqualTo(ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 123_456_789, ZoneId.of("+0")).toInstant());
+        }
+    }
+
+    @Test
+    public void canExportInParallel() throws IOException {
+        List<Path> files = exporter.exportParallel(tempDir, ExportFormat.JSON_LINES, 3);
+
+        assertThat(files).hasSize(3);
+        long total = 0;
+        for (Path file : files) {
+            total += Files.readAllLines(file).size();
+        }
+        assertThat(total).isEqualTo(10);
+    }
+}
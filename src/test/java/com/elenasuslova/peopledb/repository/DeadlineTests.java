@@ -0,0 +1,137 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.exception.QueryRejectedException;
+import com.elenasuslova.peopledb.exception.QueryTimeoutException;
+import com.elenasuslova.peopledb.model.CrudOperation;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.StatsGrouping;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DeadlineTests {
+    private static final String URL = "jdbc:h2:mem:deadlinetest;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=5000";
+    private Connection connection;
+    private Connection otherConnection;
+    private PeopleRepository repo;
+    private Person john;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(URL);
+        otherConnection = DriverManager.getConnection(URL);
+        new SchemaManager(connection).migrate();
+        repo = new PeopleRepository(connection);
+        john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        otherConnection.rollback();
+        otherConnection.close();
+        connection.createStatement().execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    @Test
+    public void runsWithinDeadline() {
+        assertThat(Deadline.after(Duration.ofSeconds(5)).call(() -> repo.findById(john.getId()))).isPresent();
+        assertThat(repo.getTimeoutCount(CrudOperation.FIND_BY_ID)).isZero();
+    }
+
+    @Test
+    public void rejectsExpiredDeadline() {
+        assertThatThrownBy(() -> Deadline.after(Duration.ZERO).call(() -> repo.findById(john.getId())))
+                .isInstanceOf(QueryTimeoutException.class);
+        assertThat(repo.getTimeoutCount(CrudOperation.FIND_BY_ID)).isEqualTo(1);
+    }
+
+    @Test
+    public void appliesToAggregateAndTreeQueries() {
+        Deadline expired = Deadline.after(Duration.ZERO);
+        assertThatThrownBy(() -> expired.call(repo::getSalaryStats)).isInstanceOf(QueryTimeoutException.class);
+        assertThatThrownBy(() -> expired.call(() -> repo.getSalaryPercentileGroupedBy(StatsGrouping.REGION, 0.5)))
+                .isInstanceOf(QueryTimeoutException.class);
+        assertThatThrownBy(() -> expired.call(() -> repo.findDescendants(john.getId(), 3))).isInstanceOf(QueryTimeoutException.class);
+
+        assertThat(repo.getTimeoutCount(CrudOperation.SALARY_STATS)).isEqualTo(1);
+        assertThat(repo.getTimeoutCount(CrudOperation.GROUPED_SALARY_PERCENTILE)).isEqualTo(1);
+        assertThat(repo.getTimeoutCount(CrudOperation.FIND_DESCENDANTS)).isEqualTo(1);
+        assertThat(repo.getSalaryStats().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void nestedDeadlineDoesNotExtendEnclosingOne() {
+        Deadline.after(Duration.ZERO).run(() ->
+                assertThatThrownBy(() -> Deadline.after(Duration.ofSeconds(5)).call(repo::count))
+                        .isInstanceOf(QueryTimeoutException.class));
+    }
+
+    @Test
+    public void cancelsUpdateWaitingForLockedRow() throws SQLException {
+        otherConnection.setAutoCommit(false);
+        otherConnection.createStatement().executeUpdate("UPDATE PEOPLE SET SALARY=1 WHERE ID=" + john.getId());
+        repo.setDefaultTimeout(CrudOperation.UPDATE, Duration.ofMillis(200));
+
+        john.setFirstName("Jon");
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> repo.update(john)).isInstanceOf(QueryTimeoutException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(repo.getTimeoutCount(CrudOperation.UPDATE)).isEqualTo(1);
+        ResultSet rs = connection.createStatement().executeQuery(CrudRepository.LOCK_TIMEOUT_SQL);
+        rs.next();
+        assertThat(rs.getInt(1)).isEqualTo(5000);
+    }
+
+    @Test
+    public void restoresLockTimeoutAfterConcurrentWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Person>> saves = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                Person person = new Person("Person" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+                Deadline deadline = Deadline.after(Duration.ofMillis(2000 + i % 8 * 100));
+                saves.add(executor.submit(() -> deadline.call(() -> repo.save(person))));
+            }
+            for (Future<Person> save : saves) {
+                save.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        ResultSet rs = connection.createStatement().executeQuery(CrudRepository.LOCK_TIMEOUT_SQL);
+        rs.next();
+        assertThat(rs.getInt(1)).isEqualTo(5000);
+    }
+
+    @Test
+    public void shedsWorkWhenSaturated() {
+        Semaphore permits = new Semaphore(1);
+        repo.limitConcurrency(permits, Duration.ofMillis(10));
+        assertThat(repo.count()).isEqualTo(1);
+
+        permits.acquireUninterruptibly();
+        assertThatThrownBy(repo::count).isInstanceOf(QueryRejectedException.class);
+        assertThat(repo.getShedCount(CrudOperation.COUNT)).isEqualTo(1);
+        permits.release();
+        assertThat(repo.count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,69 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelScanTests {
+    private static final int PEOPLE_COUNT = 10_000;
+    private JdbcConnectionPool dataSource;
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:scantest;DB_CLOSE_DELAY=-1", "", "");
+        connection = dataSource.getConnection();
+        new SchemaManager(connection).migrate();
+        repo = new PeopleRepository(connection);
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < PEOPLE_COUNT; i++) {
+            people.add(new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+        repo.saveAll(people);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.createStatement().execute("DROP ALL OBJECTS");
+        connection.close();
+        dataSource.dispose();
+    }
+
+    @Test
+    public void parallelScanVisitsEveryPersonOnce() {
+        Map<Long, Integer> visits = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        repo.parallelScan(dataSource, p -> {
+            visits.merge(p.getId(), 1, Integer::sum);
+            threads.add(Thread.currentThread().getName());
+        }, 4);
+
+        assertThat(visits).hasSize(PEOPLE_COUNT);
+        assertThat(visits.values()).containsOnly(1);
+        assertThat(threads.size()).isGreaterThan(1);
+    }
+
+    @Test
+    public void spliteratorSplitsDenseRanges() {
+        var spliterator = repo.spliterator(dataSource);
+        assertThat(spliterator.trySplit()).isNotNull();
+        assertThat(StreamSupport.stream(spliterator, false).count()).isLessThan(PEOPLE_COUNT);
+    }
+}
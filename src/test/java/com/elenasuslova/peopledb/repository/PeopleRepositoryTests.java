@@ -1,8 +1,8 @@
 package com.elenasuslova.peopledb.repository;
 
-import com.elenasuslova.peopledb.model.Address;
-import com.elenasuslova.peopledb.model.Person;
-import com.elenasuslova.peopledb.model.Region;
+import com.elenasuslova.peopledb.exception.OptimisticLockException;
+import com.elenasuslova.peopledb.model.*;
+import com.elenasuslova.peopledb.schema.SchemaManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -18,10 +18,13 @@ import java.sql.SQLException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PeopleRepositoryTests {
     private Connection connection;
@@ -29,6 +32,7 @@ public class PeopleRepositoryTests {
     @BeforeEach
     void setUp() throws SQLException {
         connection = DriverManager.getConnection("jdbc:h2:~/peopletest".replace("~", System.getProperty("user.home")));
+        new SchemaManager(connection).migrate();
         connection.setAutoCommit(false);
         repo = new PeopleRepository(connection);
     }
@@ -90,6 +94,42 @@ public class PeopleRepositoryTests {
     }
 
 
+    @Test
+    public void canSaveGraph() {
+        Address address = new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        Person sarah = new Person("Sarah", "Smith", ZonedDateTime.of(2010, 3, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(address);
+        johnny.setHomeAddress(address);
+        john.addChild(johnny);
+        john.addChild(new Person("Jenny", "Smith", ZonedDateTime.of(1982, 5, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        johnny.addChild(sarah);
+
+        repo.saveGraph(john);
+
+        assertThat(sarah.getId()).isGreaterThan(0);
+        assertThat(address.id()).isGreaterThan(0);
+        Person foundJohnny = repo.findById(johnny.getId()).get();
+        assertThat(foundJohnny.getHomeAddress().get().id()).isEqualTo(address.id());
+        assertThat(repo.findAncestors(sarah.getId())).extracting(Person::getId).containsExactly(johnny.getId(), john.getId());
+    }
+
+    @Test
+    public void saveGraphSkipsSavedPeople() {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Long johnId = john.getId();
+        long startCount = repo.count();
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+
+        repo.saveGraph(john);
+
+        assertThat(john.getId()).isEqualTo(johnId);
+        assertThat(repo.count()).isEqualTo(startCount + 1);
+        assertThat(repo.findAncestors(johnny.getId())).extracting(Person::getId).containsExactly(johnId);
+    }
+
     @Test
     public void canFindPersonById(){
         Person savedPerson = repo.save(new Person("test", "jackson", ZonedDateTime.now()));
@@ -97,6 +137,14 @@ public class PeopleRepositoryTests {
         assertThat(foundPerson).isEqualTo(savedPerson);
     }
 
+    @Test
+    public void findAllByIdFailsRatherThanSkipping() throws SQLException {
+        Connection closedConnection = DriverManager.getConnection("jdbc:h2:mem:closedtest");
+        PeopleRepository closedRepo = new PeopleRepository(closedConnection);
+        closedConnection.close();
+        assertThatThrownBy(() -> closedRepo.findAllById(List.of(1L))).isInstanceOf(RuntimeException.class);
+    }
+
     @Test
     public void canFindPersonByIdWithHomeAddress() throws SQLException {
         Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
@@ -132,6 +180,53 @@ public class PeopleRepositoryTests {
         assertThat(foundPerson.getChildren().stream().map(Person::getFirstName).collect(toSet())).contains("Johnny", "Sarah", "Jenny");
     }
 
+    @Test
+    public void canFindDescendants(){
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        Person sarah = new Person("Sarah", "Smith", ZonedDateTime.of(2010, 3, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+        johnny.addChild(sarah);
+        repo.save(john);
+
+        Person foundPerson = repo.findDescendants(john.getId(), 10).get();
+        Person foundChild = foundPerson.getChildren().iterator().next();
+        assertThat(foundChild.getFirstName()).isEqualTo("Johnny");
+        assertThat(foundChild.getParent()).containsSame(foundPerson);
+        assertThat(foundChild.getChildren()).extracting(Person::getFirstName).containsExactly("Sarah");
+    }
+
+    @Test
+    public void findDescendantsRejectsNegativeMaxDepth(){
+        assertThatThrownBy(() -> repo.findDescendants(1L, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void findDescendantsStopsAtMaxDepth(){
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+        johnny.addChild(new Person("Sarah", "Smith", ZonedDateTime.of(2010, 3, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.save(john);
+
+        Person foundPerson = repo.findDescendants(john.getId(), 1).get();
+        assertThat(foundPerson.getChildren().iterator().next().getChildren()).isEmpty();
+    }
+
+    @Test
+    public void canFindAncestors(){
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        Person sarah = new Person("Sarah", "Smith", ZonedDateTime.of(2010, 3, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+        johnny.addChild(sarah);
+        repo.save(john);
+
+        List<Person> ancestors = repo.findAncestors(sarah.getId());
+        assertThat(ancestors).extracting(Person::getFirstName).containsExactly("Johnny", "John");
+        assertThat(ancestors.get(0).getParent()).containsSame(ancestors.get(1));
+    }
+
     @Test
     public void testPersonIDNotFound(){
         Optional<Person> foundPerson = repo.findById(-1L);
@@ -193,6 +288,116 @@ public class PeopleRepositoryTests {
 
     }
 
+    @Test
+    public void canGetSalaryStats() {
+        repo.save(new Person(0, "Rich", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")), new BigDecimal("990000.00")));
+        SalaryStats stats = repo.getSalaryStats();
+        assertThat(stats.count()).isEqualTo(repo.count());
+        assertThat(stats.max()).isGreaterThanOrEqualTo(new BigDecimal("990000.00"));
+        assertThat(stats.min()).isLessThanOrEqualTo(stats.average());
+    }
+
+    @Test
+    public void salaryStatsCacheIsInvalidatedOnSave() {
+        long startCount = repo.getSalaryStats().count();
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        assertThat(repo.getSalaryStats().count()).isEqualTo(startCount + 1);
+    }
+
+    @Test
+    public void salaryStatsCacheExpiresAfterTtl() throws SQLException, InterruptedException {
+        connection.setAutoCommit(true);
+        repo.setSalaryCacheTtl(Duration.ofMillis(100));
+        long startCount = repo.getSalaryStats().count();
+        new PeopleRepository(connection).save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        assertThat(repo.getSalaryStats().count()).isEqualTo(startCount);
+
+        Thread.sleep(150);
+        assertThat(repo.getSalaryStats().count()).isEqualTo(startCount + 1);
+    }
+
+    @Test
+    public void canGetSalaryStatsGroupedByRegion() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST));
+        repo.save(john);
+
+        List<GroupedSalaryStats> groups = repo.getSalaryStatsGroupedBy(StatsGrouping.REGION);
+        assertThat(groups).extracting(GroupedSalaryStats::group).contains("WEST");
+        assertThat(groups.stream().mapToLong(g -> g.stats().count()).sum()).isEqualTo(repo.count());
+    }
+
+    @Test
+    public void canGetSalaryStatsGroupedByDobDecade() {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1984, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+        List<GroupedSalaryStats> groups = repo.getSalaryStatsGroupedBy(StatsGrouping.DOB_DECADE);
+        assertThat(groups).extracting(GroupedSalaryStats::group).contains("1980");
+    }
+
+    @Test
+    public void canGetMedianSalary() {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        BigDecimal median = repo.getSalaryPercentile(0.5).get();
+        SalaryStats stats = repo.getSalaryStats();
+        assertThat(median).isBetween(stats.min(), stats.max());
+    }
+
+    @Test
+    public void canGetMedianSalaryGroupedByRegion() {
+        Person john = new Person(0, "John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")), new BigDecimal("100.00"));
+        john.setHomeAddress(new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST));
+        repo.save(john);
+
+        Map<String, BigDecimal> medians = repo.getSalaryPercentileGroupedBy(StatsGrouping.REGION, 0.5);
+        SalaryStats west = repo.getSalaryStatsGroupedBy(StatsGrouping.REGION).stream()
+                .filter(g -> "WEST".equals(g.group()))
+                .findFirst().get().stats();
+        assertThat(medians.get("WEST")).isBetween(west.min(), west.max());
+    }
+
+    @Test
+    public void updateIncrementsVersion(){
+        Person savedPerson = repo.save(new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        savedPerson.setSalary(new BigDecimal("730000.28"));
+        repo.update(savedPerson);
+
+        assertThat(savedPerson.getVersion()).isEqualTo(1L);
+        assertThat(repo.findById(savedPerson.getId()).get().getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void updateOfStaleCopyThrowsOptimisticLockException(){
+        Person savedPerson = repo.save(new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person firstCopy = repo.findById(savedPerson.getId()).get();
+        Person secondCopy = repo.findById(savedPerson.getId()).get();
+
+        firstCopy.setSalary(new BigDecimal("1000.00"));
+        repo.update(firstCopy);
+        secondCopy.setSalary(new BigDecimal("2000.00"));
+
+        assertThatThrownBy(() -> repo.update(secondCopy)).isInstanceOf(OptimisticLockException.class);
+    }
+
+    @Test
+    public void canUpdateWithRetry(){
+        Person savedPerson = repo.save(new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        PeopleRepository otherRepo = new PeopleRepository(connection);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Person updatedPerson = repo.updateWithRetry(savedPerson.getId(), p -> {
+            if (attempts.incrementAndGet() == 1) {
+                Person concurrentCopy = otherRepo.findById(p.getId()).get();
+                concurrentCopy.setFirstName("Rob");
+                otherRepo.update(concurrentCopy);
+            }
+            p.setSalary(new BigDecimal("3000.00"));
+        }, 3);
+
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(updatedPerson.getFirstName()).isEqualTo("Rob");
+        assertThat(repo.findById(savedPerson.getId()).get().getSalary()).isEqualByComparingTo("3000.00");
+    }
+
     @Test
     @Disabled
     public void loadData() throws IOException, SQLException {
@@ -0,0 +1,77 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.ReplicaSelection;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicaRouterTests {
+    private Connection primary;
+    private Connection replica;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = DriverManager.getConnection("jdbc:h2:mem:primary");
+        replica = DriverManager.getConnection("jdbc:h2:mem:replica");
+        new SchemaManager(primary).migrate();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        replica.close();
+        primary.close();
+    }
+
+    /**
+     * The replica reads PEOPLE and ADDRESSES of the primary through linked tables, which keeps the two databases in sync.
+     */
+    private void linkReplicaToPrimary() throws SQLException {
+        replica.createStatement().execute("CREATE LINKED TABLE PEOPLE('org.h2.Driver', 'jdbc:h2:mem:primary', '', '', 'PEOPLE')");
+        replica.createStatement().execute("CREATE LINKED TABLE ADDRESSES('org.h2.Driver', 'jdbc:h2:mem:primary', '', '', 'ADDRESSES')");
+    }
+
+    @Test
+    public void readsGoToReplicaOutsideReadYourWritesWindow() {
+        new SchemaManager(replica).migrate();
+        PeopleRepository repo = new PeopleRepository(new ReplicaRouter(primary, List.of(replica), ReplicaSelection.ROUND_ROBIN, Duration.ZERO));
+
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        assertThat(repo.findById(savedPerson.getId())).isEmpty();
+        assertThat(repo.count()).isZero();
+    }
+
+    @Test
+    public void readsGoToPrimaryInsideReadYourWritesWindow() {
+        new SchemaManager(replica).migrate();
+        PeopleRepository repo = new PeopleRepository(new ReplicaRouter(primary, List.of(replica), ReplicaSelection.ROUND_ROBIN, Duration.ofMinutes(1)));
+
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        assertThat(repo.findById(savedPerson.getId())).contains(savedPerson);
+    }
+
+    @Test
+    public void canReadOwnWritesFromLinkedReplica() throws SQLException {
+        linkReplicaToPrimary();
+        ReplicaRouter router = new ReplicaRouter(primary, List.of(replica), ReplicaSelection.LEAST_LOADED, Duration.ZERO);
+        PeopleRepository repo = new PeopleRepository(router);
+
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        assertThat(repo.findById(savedPerson.getId())).contains(savedPerson);
+        assertThat(router.getInFlightReads(0)).isZero();
+    }
+}
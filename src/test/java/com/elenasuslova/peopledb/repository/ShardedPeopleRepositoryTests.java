@@ -0,0 +1,98 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.exception.UnableToSaveException;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.SalaryStats;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedPeopleRepositoryTests {
+    private static final long SHARD_ID_RANGE = 1000;
+    private List<Connection> connections;
+    private ShardedPeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connections = List.of(DriverManager.getConnection("jdbc:h2:mem:shard0"), DriverManager.getConnection("jdbc:h2:mem:shard1"));
+        connections.forEach(c -> new SchemaManager(c).migrate());
+        repo = new ShardedPeopleRepository(connections, SHARD_ID_RANGE);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void savesIntoEveryShardWithinItsIdRange() {
+        for (int i = 0; i < 20; i++) {
+            Person person = repo.save(new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+            assertThat(repo.findById(person.getId())).contains(person);
+        }
+        assertThat(repo.findAll()).extracting(p -> repo.getShardIndex(p.getId())).contains(0, 1);
+        assertThat(repo.count()).isEqualTo(20);
+    }
+
+    @Test
+    public void fullShardRejectsSave() throws SQLException {
+        try (Connection shard0 = DriverManager.getConnection("jdbc:h2:mem:smallshard0");
+             Connection shard1 = DriverManager.getConnection("jdbc:h2:mem:smallshard1")) {
+            new SchemaManager(shard0).migrate();
+            new SchemaManager(shard1).migrate();
+            ShardedPeopleRepository smallRepo = new ShardedPeopleRepository(List.of(shard0, shard1), 2);
+            smallRepo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+            smallRepo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+            assertThatThrownBy(() -> smallRepo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))))
+                    .isInstanceOf(UnableToSaveException.class);
+            assertThat(smallRepo.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void childrenAreSavedOnParentShard() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.save(john);
+
+        Person foundPerson = repo.findById(john.getId()).get();
+        Person child = foundPerson.getChildren().iterator().next();
+        assertThat(repo.getShardIndex(child.getId())).isEqualTo(repo.getShardIndex(john.getId()));
+    }
+
+    @Test
+    public void canMergeSalaryStats() {
+        for (int i = 0; i < 10; i++) {
+            repo.save(new Person(0, "John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")), new BigDecimal(1000 * (i + 1))));
+        }
+        SalaryStats stats = repo.getSalaryStats();
+        assertThat(stats.count()).isEqualTo(10);
+        assertThat(stats.total()).isEqualByComparingTo("55000");
+        assertThat(stats.average()).isEqualByComparingTo("5500");
+        assertThat(stats.min()).isEqualByComparingTo("1000");
+        assertThat(stats.max()).isEqualByComparingTo("10000");
+    }
+
+    @Test
+    public void canDeleteAcrossShards() {
+        Person p1 = repo.save(new Person("Bobby1", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person p2 = repo.save(new Person("Bobby2", "Jones", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.delete(p1, p2);
+        assertThat(repo.count()).isZero();
+    }
+}
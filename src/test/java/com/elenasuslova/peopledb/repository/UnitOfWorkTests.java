@@ -0,0 +1,180 @@
+package com.elenasuslova.peopledb.repository;
+
+import com.elenasuslova.peopledb.exception.OptimisticLockException;
+import com.elenasuslova.peopledb.model.*;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import com.elenasuslova.peopledb.snapshot.PeopleSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UnitOfWorkTests {
+    private Connection connection;
+    private PeopleRepository repo;
+    private UnitOfWork unitOfWork;
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:unitofworktest");
+        new SchemaManager(connection).migrate();
+        repo = new PeopleRepository(connection);
+        unitOfWork = new UnitOfWork(repo);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void nothingIsWrittenBeforeCommit() {
+        unitOfWork.registerNew(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        assertThat(repo.count()).isZero();
+
+        unitOfWork.commit();
+        assertThat(repo.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void savesParentsBeforeChildren() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST));
+        john.addChild(johnny);
+        unitOfWork.registerNew(johnny);
+        unitOfWork.registerNew(john);
+
+        unitOfWork.commit();
+
+        Person foundPerson = repo.findById(john.getId()).get();
+        assertThat(foundPerson.getChildren()).extracting(Person::getId).containsExactly(johnny.getId());
+        assertThat(foundPerson.getHomeAddress().get().city()).isEqualTo("Richmond");
+    }
+
+    @Test
+    public void canUpdateAndRemove() {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person bobby = repo.save(new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        john.setSalary(new BigDecimal("1000.00"));
+        unitOfWork.registerDirty(john);
+        unitOfWork.registerRemoved(bobby);
+        unitOfWork.commit();
+
+        assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("1000.00");
+        assertThat(repo.findById(bobby.getId())).isEmpty();
+    }
+
+    @Test
+    public void doesNotSaveNewAddressesOfChangedPeople() throws SQLException {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        john.setHomeAddress(new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST));
+        unitOfWork.registerDirty(john);
+
+        unitOfWork.commit();
+        ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM ADDRESSES");
+        rs.next();
+        assertThat(rs.getLong(1)).isZero();
+    }
+
+    @Test
+    public void rollbackToSavepointForgetsLaterChanges() {
+        unitOfWork.registerNew(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        UnitOfWork.Savepoint savepoint = unitOfWork.savepoint();
+        unitOfWork.registerNew(new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        unitOfWork.rollbackTo(savepoint);
+        unitOfWork.commit();
+
+        assertThat(repo.findAll()).extracting(Person::getFirstName).containsExactly("John");
+    }
+
+    @Test
+    public void conflictRollsBackWholeCommit() {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person staleJohn = repo.findById(john.getId()).get();
+        john.setFirstName("Jon");
+        repo.update(john);
+
+        staleJohn.setSalary(new BigDecimal("1000.00"));
+        unitOfWork.registerNew(new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        unitOfWork.registerDirty(staleJohn);
+
+        assertThatThrownBy(unitOfWork::commit).isInstanceOf(OptimisticLockException.class);
+        assertThat(repo.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void canRetryAfterFailedCommit() {
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person sarah = repo.save(new Person("Sarah", "Smith", ZonedDateTime.of(1982, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person staleJohn = repo.findById(john.getId()).get();
+        john.setFirstName("Jon");
+        repo.update(john);
+
+        Address address = new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST);
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(1986, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        bobby.setHomeAddress(address);
+        sarah.setSalary(new BigDecimal("2000.00"));
+        staleJohn.setSalary(new BigDecimal("1000.00"));
+        unitOfWork.registerNew(bobby);
+        unitOfWork.registerDirty(sarah);
+        unitOfWork.registerDirty(staleJohn);
+
+        assertThatThrownBy(unitOfWork::commit).isInstanceOf(OptimisticLockException.class);
+        assertThat(bobby.getId()).isNull();
+        assertThat(address.id()).isNull();
+        assertThat(sarah.getVersion()).isZero();
+
+        staleJohn.setVersion(john.getVersion());
+        unitOfWork.commit();
+
+        assertThat(repo.count()).isEqualTo(3);
+        assertThat(repo.findById(bobby.getId()).get().getHomeAddress().get().id()).isEqualTo(address.id());
+        assertThat(repo.findById(sarah.getId()).get().getVersion()).isEqualTo(1L);
+        assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    public void addressChangesReachPeopleCachesAndSnapshot() throws IOException {
+        Address address = new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(address);
+        repo.save(john);
+        assertThat(repo.getSalaryStatsGroupedBy(StatsGrouping.REGION)).extracting(GroupedSalaryStats::group).containsExactly("WEST");
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        repo.setSnapshot(PeopleSnapshot.open(file));
+
+        Address moved = new Address(address.id(),"1 Main St", null, "Boston", "MA", "02101", "USA", "Suffolk", Region.NORTHEAST);
+        unitOfWork.registerDirty(moved);
+        unitOfWork.commit();
+
+        assertThat(repo.getSalaryStatsGroupedBy(StatsGrouping.REGION)).extracting(GroupedSalaryStats::group).containsExactly("NORTHEAST");
+        assertThat(repo.findById(john.getId()).get().getHomeAddress().get().city()).isEqualTo("Boston");
+
+        unitOfWork.registerRemoved(moved);
+        unitOfWork.commit();
+
+        assertThat(repo.findById(john.getId()).get().getHomeAddress()).isEmpty();
+    }
+}
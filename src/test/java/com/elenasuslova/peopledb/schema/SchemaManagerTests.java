@@ -0,0 +1,57 @@
+package com.elenasuslova.peopledb.schema;
+
+import com.elenasuslova.peopledb.model.CrudOperation;
+import com.elenasuslova.peopledb.repository.PeopleRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SchemaManagerTests {
+    private Connection connection;
+    private SchemaManager schemaManager;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:schematest");
+        schemaManager = new SchemaManager(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void canMigrateEmptyDatabase() {
+        int version = schemaManager.migrate();
+        assertThat(version).isEqualTo(SchemaManager.MIGRATIONS.get(SchemaManager.MIGRATIONS.size() - 1).version());
+    }
+
+    @Test
+    public void migrateIsIdempotent() throws SQLException {
+        int firstVersion = schemaManager.migrate();
+        int secondVersion = schemaManager.migrate();
+        assertThat(secondVersion).isEqualTo(firstVersion);
+        assertThat(schemaManager.getCurrentVersion()).isEqualTo(firstVersion);
+    }
+
+    @Test
+    public void findByIdUsesIndexes() {
+        schemaManager.migrate();
+        List<QueryPlan> plans = schemaManager.checkIndexCoverage(new PeopleRepository(connection));
+
+        QueryPlan findById = plans.stream().filter(p -> p.operationType() == CrudOperation.FIND_BY_ID).findFirst().get();
+        assertThat(findById.isFullScan()).isFalse();
+        QueryPlan findAll = plans.stream().filter(p -> p.operationType() == CrudOperation.FIND_ALL).findFirst().get();
+        assertThat(findAll.fullScanTables()).contains("PEOPLE");
+    }
+}
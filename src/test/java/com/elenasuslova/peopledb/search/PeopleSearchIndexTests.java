@@ -0,0 +1,103 @@
+package com.elenasuslova.peopledb.search;
+
+import com.elenasuslova.peopledb.event.ChangeFeed;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.repository.PeopleRepository;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleSearchIndexTests {
+    private JdbcConnectionPool dataSource;
+    private Connection connection;
+    private ChangeFeed feed;
+    private PeopleRepository repo;
+    private PeopleSearchIndex index;
+    private Person john;
+    private Person jane;
+    private Person bobby;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:searchtest;DB_CLOSE_DELAY=-1", "", "");
+        feed = new ChangeFeed();
+        connection = feed.wrap(dataSource.getConnection());
+        new SchemaManager(connection).migrate();
+        repo = new PeopleRepository(connection);
+        repo.publishChangesTo(feed);
+        john = createPerson("John", "Smith", "john.smith@example.com");
+        jane = createPerson("Jane", "Smyth", "jane@example.com");
+        bobby = createPerson("Bobby", "Smithers", null);
+        repo.saveAll(List.of(john, jane, bobby));
+        index = new PeopleSearchIndex(repo, dataSource).build(feed);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        index.close();
+        connection.createStatement().execute("DROP ALL OBJECTS");
+        connection.close();
+        dataSource.dispose();
+    }
+
+    private static Person createPerson(String firstName, String lastName, String email) {
+        Person person = new Person(firstName, lastName, ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        person.setEmail(email);
+        return person;
+    }
+
+    private static <R> R await(Supplier<R> lookup, R expected) throws InterruptedException {
+        R result = lookup.get();
+        for (int i = 0; i < 100 && !result.equals(expected); i++) {
+            Thread.sleep(10);
+            result = lookup.get();
+        }
+        return result;
+    }
+
+    @Test
+    public void indexesExistingPeople() {
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.findByPrefix("Smi", 10)).containsExactly(john.getId(), bobby.getId());
+        assertThat(index.findByPrefix("jane@", 10)).containsExactly(jane.getId());
+        assertThat(index.findByPrefix("x", 10)).isEmpty();
+    }
+
+    @Test
+    public void findsSimilarNamesClosestFirst() {
+        assertThat(index.findSimilar("smith", 1, 10)).containsExactly(john.getId(), jane.getId());
+        assertThat(index.findSimilar("jhon", 2, 10)).containsExactly(john.getId());
+        assertThat(index.findSimilar("smith", 1, 1)).containsExactly(john.getId());
+    }
+
+    @Test
+    public void hydratesInResultOrder() {
+        List<Long> ids = index.findByPrefix("smi", 10);
+        assertThat(index.hydrate(ids)).extracting(Person::getFirstName).containsExactly("John", "Bobby");
+    }
+
+    @Test
+    public void followsRepositoryWrites() throws InterruptedException {
+        Person alice = repo.save(createPerson("Alice", "Smart", null));
+        assertThat(await(() -> index.findByPrefix("sma", 10), List.of(alice.getId()))).containsExactly(alice.getId());
+
+        john.setLastName("Jones");
+        repo.update(john);
+        assertThat(await(() -> index.findByPrefix("smi", 10), List.of(bobby.getId()))).containsExactly(bobby.getId());
+        assertThat(index.findByPrefix("jones", 10)).containsExactly(john.getId());
+
+        repo.delete(bobby);
+        assertThat(await(() -> index.findByPrefix("smi", 10), List.of())).isEmpty();
+    }
+}
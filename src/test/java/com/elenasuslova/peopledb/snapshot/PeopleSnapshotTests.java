@@ -0,0 +1,178 @@
+package com.elenasuslova.peopledb.snapshot;
+
+import com.elenasuslova.peopledb.model.Address;
+import com.elenasuslova.peopledb.model.Person;
+import com.elenasuslova.peopledb.model.Region;
+import com.elenasuslova.peopledb.repository.PeopleRepository;
+import com.elenasuslova.peopledb.schema.SchemaManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleSnapshotTests {
+    private Connection connection;
+    private PeopleRepository repo;
+    private Person john;
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:snapshottest");
+        new SchemaManager(connection).migrate();
+        repo = new PeopleRepository(connection);
+        john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null,"123 Beale St", "Apt 1A", "Richmond", "WA", "90210", "USA", "Main County", Region.WEST));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.save(john);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void canFindPersonInSnapshot() throws IOException {
+        Person foundPerson = repo.findById(john.getId()).get();
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(foundPerson));
+
+        Person snapshotPerson = PeopleSnapshot.open(file).find(john.getId()).get();
+        assertThat(snapshotPerson).isEqualTo(foundPerson);
+        assertThat(snapshotPerson.getHomeAddress()).isEqualTo(foundPerson.getHomeAddress());
+        assertThat(snapshotPerson.getChildren()).extracting(Person::getFirstName).containsExactly("Johnny");
+    }
+
+    @Test
+    public void verifyInvalidatesChangedPeople() throws IOException, SQLException {
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+        assertThat(snapshot.verify(connection)).isZero();
+
+        john.setSalary(new BigDecimal("5000.00"));
+        new PeopleRepository(connection).update(john);
+
+        assertThat(snapshot.verify(connection)).isEqualTo(1);
+        assertThat(snapshot.find(john.getId())).isEmpty();
+    }
+
+    @Test
+    public void verifyInvalidatesPeopleWithNewVersion() throws IOException, SQLException {
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+
+        new PeopleRepository(connection).update(john);
+
+        assertThat(snapshot.verify(connection)).isEqualTo(1);
+        assertThat(snapshot.find(john.getId())).isEmpty();
+    }
+
+    @Test
+    public void verifyChecksSnapshotsLargerThanOneChunk() throws IOException, SQLException {
+        List<Person> parents = new ArrayList<>();
+        for (int i = 0; i < PeopleSnapshot.VERIFY_CHUNK_SIZE / 2 + 1; i++) {
+            Person parent = new Person("Parent" + i, "Smith", ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneId.of("+0")));
+            parent.addChild(new Person("Child" + i, "Smith", ZonedDateTime.of(2010, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"))));
+            parents.add(repo.save(parent));
+        }
+        List<Person> people = new ArrayList<>();
+        for (Person parent : parents) {
+            people.add(repo.findById(parent.getId()).get());
+            people.add(repo.findById(parent.getChildren().iterator().next().getId()).get());
+        }
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, people);
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+        assertThat(snapshot.size()).isGreaterThan(PeopleSnapshot.VERIFY_CHUNK_SIZE);
+        assertThat(snapshot.verify(connection)).isZero();
+
+        Person lastChild = people.get(people.size() - 1);
+        lastChild.setSalary(new BigDecimal("5000.00"));
+        repo.update(lastChild);
+
+        assertThat(snapshot.verify(connection)).isEqualTo(2);
+        assertThat(snapshot.find(lastChild.getId())).isEmpty();
+        assertThat(snapshot.find(parents.get(parents.size() - 1).getId())).isEmpty();
+        assertThat(snapshot.find(parents.get(0).getId())).isPresent();
+    }
+
+    @Test
+    public void keepsDobToTheNanosecond() throws IOException, SQLException {
+        john.setDob(ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 123_456_789, ZoneId.of("+0")));
+        repo.update(john);
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+        assertThat(snapshot.find(john.getId()).get().getDob().getNano()).isEqualTo(123_456_789);
+        assertThat(snapshot.verify(connection)).isZero();
+
+        connection.createStatement().executeUpdate("UPDATE PEOPLE SET DOB = DATEADD(NANOSECOND, 1, DOB) WHERE ID = " + john.getId());
+
+        assertThat(snapshot.verify(connection)).isEqualTo(1);
+        assertThat(snapshot.find(john.getId())).isEmpty();
+    }
+
+    @Test
+    public void repositoryInvalidatesSnapshotOnWrite() throws IOException {
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+        repo.setSnapshot(snapshot);
+
+        john.setSalary(new BigDecimal("5000.00"));
+        repo.update(john);
+
+        assertThat(snapshot.contains(john.getId())).isFalse();
+        assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("5000.00");
+    }
+
+    @Test
+    public void repositoryInvalidatesParentOnChildUpdate() throws IOException {
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+        repo.setSnapshot(snapshot);
+        Person johnny = repo.findById(john.getChildren().iterator().next().getId()).get();
+
+        johnny.setSalary(new BigDecimal("1000.00"));
+        repo.update(johnny);
+
+        assertThat(snapshot.contains(john.getId())).isFalse();
+        assertThat(repo.findById(john.getId()).get().getChildren()).extracting(Person::getSalary)
+                .usingComparatorForType(BigDecimal::compareTo, BigDecimal.class)
+                .containsExactly(new BigDecimal("1000.00"));
+    }
+
+    @Test
+    public void repositoryInvalidatesParentOnChildDelete() throws IOException {
+        Path file = tempDir.resolve("people.snapshot");
+        PeopleSnapshot.write(file, List.of(repo.findById(john.getId()).get()));
+        PeopleSnapshot snapshot = PeopleSnapshot.open(file);
+        repo.setSnapshot(snapshot);
+        Person johnny = repo.findById(john.getChildren().iterator().next().getId()).get();
+
+        repo.delete(johnny);
+
+        assertThat(snapshot.contains(john.getId())).isFalse();
+        assertThat(repo.findById(john.getId()).get().getChildren()).isEmpty();
+    }
+}